@@ -0,0 +1,185 @@
+package com.github.williams.matt.thermorion;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import com.github.williams.matt.thermorion.engine.NoteEventBus;
+import com.github.williams.matt.thermorion.engine.NoteEventQueue;
+import com.github.williams.matt.thermorion.engine.SampleBank;
+import com.github.williams.matt.thermorion.engine.VoiceAllocator;
+import com.github.williams.matt.thermorion.engine.VoiceMixer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Plays notes by mixing pre-rendered piano notes ourselves and streaming the result through an
+ * AudioTrack.
+ *
+ * The audio thread reads notes straight off its own subscription to the {@link NoteEventBus},
+ * each stamped with the time its step was due.  It renders a fixed lookahead ahead of playback
+ * and places each note at the exact output frame corresponding to its onset plus that lookahead,
+ * so every note comes out with the same latency regardless of when its buffer happened to be
+ * rendered.
+ */
+class AudioTrackPlayer implements NotePlayer {
+    private static final String TAG = "AudioTrackPlayer";
+    private static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+    private static final long SAFETY_MARGIN_NANOS = 5000000L;
+    private static final long TIMESTAMP_INTERVAL_NANOS = 1000000000L;
+    /** The stream volume is a binder call, so it is only re-read this often. */
+    private static final long VOLUME_INTERVAL_NANOS = 250000000L;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final AudioManager audioManager;
+    private final Future<SampleBank> sampleBank;
+    private final int sampleRate;
+    private final int framesPerBuffer;
+    private final VoiceAllocator allocator;
+    private final NoteEventBus bus;
+    private NoteEventQueue queue = null;
+    private AudioThread audioThread = null;
+
+    /**
+     * @param allocator assigns the mixer's voices, timed in output frames - reset whenever
+     *                  playback starts
+     * @param bus the notes to play, subscribed to while playing
+     */
+    public AudioTrackPlayer(Context context, VoiceAllocator allocator, NoteEventBus bus) {
+        this.allocator = allocator;
+        this.bus = bus;
+        audioManager = (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
+        sampleRate = SampleBankLoader.getOutputSampleRate(audioManager);
+        framesPerBuffer = SampleBankLoader.getIntProperty(audioManager, AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER, DEFAULT_FRAMES_PER_BUFFER);
+        sampleBank = SampleBankLoader.load(context, sampleRate);
+    }
+
+    @Override
+    public void start() {
+        queue = bus.subscribe(QUEUE_CAPACITY);
+        audioThread = new AudioThread(queue);
+    }
+
+    @Override
+    public void stop() {
+        if (audioThread != null) {
+            bus.unsubscribe(queue);
+            audioThread.terminate();
+            // The allocator must be done with before a restarted thread resets it.
+            try {
+                audioThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            audioThread = null;
+            queue = null;
+        }
+    }
+
+    private float readVolume() {
+        float actVolume = (float) audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+        float maxVolume = (float) audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+        return actVolume / maxVolume;
+    }
+
+    private class AudioThread extends Thread {
+        private final NoteEventQueue queue;
+        private volatile boolean terminating = false;
+
+        public AudioThread(NoteEventQueue queue) {
+            super("AudioTrackPlayer");
+            this.queue = queue;
+            start();
+        }
+
+        public void terminate() {
+            terminating = true;
+            // Rather than waiting for the samples to finish loading, if they haven't yet.
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            SampleBank bank;
+            try {
+                bank = sampleBank.get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (!terminating) {
+                    Log.e(TAG, "No samples to play", e);
+                }
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            int minBufferFrames = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT) / 2;
+            int trackBufferFrames = Math.max(minBufferFrames, 2 * framesPerBuffer);
+            AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                                              AudioFormat.ENCODING_PCM_16BIT, trackBufferFrames * 2, AudioTrack.MODE_STREAM);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                Log.e(TAG, "Failed to initialize AudioTrack");
+                track.release();
+                return;
+            }
+            // Output frames count from 0 again, so nothing from a previous run is still sounding.
+            allocator.reset();
+            VoiceMixer mixer = new VoiceMixer(allocator, framesPerBuffer);
+            short[] buffer = new short[framesPerBuffer];
+            AudioTimestamp timestamp = new AudioTimestamp();
+
+            // Anything we write now is heard once the track's buffer has drained ahead of it, so
+            // schedule every note at least that far (plus the buffer being rendered) after its
+            // onset.  playbackAnchorNanos is our estimate of when frame 0 is heard.
+            long lookaheadNanos = (trackBufferFrames + framesPerBuffer) * 1000000000L / sampleRate + SAFETY_MARGIN_NANOS;
+            long playbackAnchorNanos = System.nanoTime() + trackBufferFrames * 1000000000L / sampleRate;
+            long nextTimestampNanos = System.nanoTime() + TIMESTAMP_INTERVAL_NANOS;
+            long nextVolumeNanos = System.nanoTime() + VOLUME_INTERVAL_NANOS;
+            float volume = readVolume();
+            long framesWritten = 0;
+            long lateNotes = 0;
+
+            // Notes published while the samples were loading are long overdue.
+            while (queue.poll()) {
+            }
+            track.play();
+            while (!terminating) {
+                while (queue.poll()) {
+                    if (queue.isStep()) {
+                        continue;
+                    }
+                    long onsetNanos = queue.getOnsetNanos() + lookaheadNanos;
+                    long frame = (onsetNanos - playbackAnchorNanos) * sampleRate / 1000000000L;
+                    if (frame < framesWritten) {
+                        frame = framesWritten;
+                        lateNotes++;
+                    }
+                    if (queue.getVoice() < bank.getNumVoices()) {
+                        mixer.noteOn(frame, bank.getVoice(queue.getVoice()), queue.getVoice(), volume);
+                    }
+                }
+                mixer.render(buffer, framesPerBuffer, framesWritten);
+                // Blocks once the track's buffer is full, which is what paces this thread.
+                track.write(buffer, 0, framesPerBuffer);
+                framesWritten += framesPerBuffer;
+
+                long now = System.nanoTime();
+                if (now >= nextVolumeNanos) {
+                    volume = readVolume();
+                    nextVolumeNanos = now + VOLUME_INTERVAL_NANOS;
+                }
+                if ((now >= nextTimestampNanos) && track.getTimestamp(timestamp)) {
+                    // Re-anchor to the hardware's own view of when frames are heard, to follow
+                    // any drift between the audio clock and System.nanoTime().
+                    playbackAnchorNanos = timestamp.nanoTime - timestamp.framePosition * 1000000000L / sampleRate;
+                    nextTimestampNanos = now + TIMESTAMP_INTERVAL_NANOS;
+                }
+            }
+            track.stop();
+            track.release();
+            Log.i(TAG, "Terminated: lateNotes=" + lateNotes + " " + allocator + " queueDropped=" + queue.getDroppedCount());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.williams.matt.thermorion;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.flir.flironesdk.Device;
+import com.flir.flironesdk.Frame;
+import com.flir.flironesdk.FrameProcessor;
+import com.flir.flironesdk.RenderedImage;
+import com.github.williams.matt.thermorion.engine.FrameMailbox;
+import com.github.williams.matt.thermorion.engine.FrameSource;
+import com.github.williams.matt.thermorion.engine.LatencyHistogram;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+
+import java.util.EnumSet;
+
+/**
+ * {@link FrameSource} for a FLIR One camera: pass it to Device.startFrameStream() once a device
+ * is connected, and it renders the stream through a FrameProcessor on its own thread.
+ *
+ * Unless it was created radiometric-only, the SDK's RGBA rendering of each frame is also handed
+ * to an {@link ImageListener} for display, always after the radiometric image of the same frame
+ * has gone to the {@link Listener}, so the listener can tell whether the frame changed anything.
+ */
+class FlirFrameSource implements FrameSource, Device.StreamDelegate, FrameProcessor.Delegate {
+    interface ImageListener {
+        /**
+         * Called on the frame processing thread with each ThermalRGBA8888Image, once the frame it
+         * was rendered from has been passed to the {@link Listener}.
+         */
+        void onImage(RenderedImage renderedImage);
+    }
+
+    private final Context context;
+    private final boolean radiometricOnly;
+    private final ImageListener imageListener;
+    private final LatencyHistogram captureLatency;
+    // When the frame now being rendered was handed to the FrameProcessor; frame processor thread only.
+    private long renderStart;
+    // The RGBA image of the frame now being rendered, held back until its radiometric image is in.
+    private RenderedImage pendingImage;
+    private final RadiometricFrame frame = new RadiometricFrame();
+    private volatile Listener listener = null;
+    private volatile FrameProcessorThread frameProcessorThread = null;
+    private volatile boolean tuning = false;
+
+    /**
+     * @param captureLatency records how long the SDK takes to render each radiometric image
+     */
+    public FlirFrameSource(Context context, boolean radiometricOnly, ImageListener imageListener, LatencyHistogram captureLatency) {
+        this.context = context;
+        this.radiometricOnly = radiometricOnly;
+        this.imageListener = imageListener;
+        this.captureLatency = captureLatency;
+    }
+
+    /**
+     * Frames captured while the camera is tuning are not worth processing, so they are skipped.
+     */
+    public void setTuning(boolean tuning) {
+        this.tuning = tuning;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        frameProcessorThread = new FrameProcessorThread();
+    }
+
+    @Override
+    public synchronized void stop() {
+        FrameProcessorThread thread = frameProcessorThread;
+        frameProcessorThread = null;
+        if (thread != null) {
+            thread.terminate();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Log.e("FlirFrameSource", "Interrupted waiting for frame processor", e);
+            }
+        }
+        listener = null;
+    }
+
+    // StreamDelegate method
+    @Override
+    public void onFrameReceived(Frame frame) {
+        FrameProcessorThread thread = frameProcessorThread;
+        if (!tuning && (thread != null)) {
+            thread.processFrame(frame);
+        }
+    }
+
+    @Override
+    public void onFrameProcessed(RenderedImage renderedImage) {
+        if (renderedImage.imageType() == RenderedImage.ImageType.ThermalRadiometricKelvinImage) {
+            Listener frameListener = listener;
+            if (frameListener != null) {
+                long now = System.nanoTime();
+                captureLatency.record(now - renderStart);
+                frame.set(renderedImage.thermalPixelData(), renderedImage.width(), renderedImage.height(), now);
+                frameListener.onFrame(frame);
+            }
+        } else if (renderedImage.imageType() == RenderedImage.ImageType.ThermalRGBA8888Image) {
+            pendingImage = renderedImage;
+        }
+    }
+
+    private void deliverPendingImage() {
+        RenderedImage renderedImage = pendingImage;
+        if (renderedImage != null) {
+            pendingImage = null;
+            imageListener.onImage(renderedImage);
+        }
+    }
+
+    private class FrameProcessorThread extends Thread {
+        private FrameProcessor frameProcessor;
+        private final FrameMailbox<Frame> mailbox = new FrameMailbox<>();
+
+        public FrameProcessorThread() {
+            super("FrameProcessorThread");
+            EnumSet<RenderedImage.ImageType> imageTypes;
+            if (radiometricOnly) {
+                imageTypes = EnumSet.of(RenderedImage.ImageType.ThermalRadiometricKelvinImage);
+            } else {
+                imageTypes = EnumSet.of(RenderedImage.ImageType.ThermalRGBA8888Image,
+                                        RenderedImage.ImageType.ThermalRadiometricKelvinImage);
+            }
+            frameProcessor = new FrameProcessor(context, FlirFrameSource.this, imageTypes);
+            start();
+        }
+
+        public void processFrame(Frame frame) {
+            mailbox.offer(frame);
+        }
+
+        public void terminate() {
+            mailbox.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                while ((frame = mailbox.take()) != null) {
+                    renderStart = System.nanoTime();
+                    frameProcessor.processFrame(frame);
+                    deliverPendingImage();
+                    mailbox.markProcessed();
+                }
+            } catch (InterruptedException e) {
+                Log.e("FrameProcessorThread", "Caught InterruptedException", e);
+            }
+            Log.i("FrameProcessorThread", "Terminated: " + mailbox);
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package com.github.williams.matt.thermorion;
 
+import com.github.williams.matt.thermorion.engine.Colorizer;
+import com.github.williams.matt.thermorion.engine.FrameSource;
+import com.github.williams.matt.thermorion.engine.GridGeometry;
+import com.github.williams.matt.thermorion.engine.LatencyHistogram;
+import com.github.williams.matt.thermorion.engine.MidiFileWriter;
+import com.github.williams.matt.thermorion.engine.NoteEventQueue;
+import com.github.williams.matt.thermorion.engine.NoteSinkThread;
+import com.github.williams.matt.thermorion.engine.Palette;
+import com.github.williams.matt.thermorion.engine.PipelineStats;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+import com.github.williams.matt.thermorion.engine.ReplayFrameSource;
+import com.github.williams.matt.thermorion.engine.SessionRecorder;
+import com.github.williams.matt.thermorion.engine.SyntheticFrameSource;
 import com.github.williams.matt.thermorion.util.SystemUiHider;
 
 import android.annotation.TargetApi;
 import android.app.AlertDialog;
 import android.app.Dialog;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Color;
@@ -16,24 +28,25 @@ import android.media.AudioManager;
 import android.net.Uri;
 import android.util.Log;
 import android.app.Activity;
-import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.OrientationEventListener;
+import android.view.SurfaceView;
 import android.view.View;
+import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
 import com.flir.flironesdk.Device;
-import com.flir.flironesdk.Frame;
-import com.flir.flironesdk.FrameProcessor;
 import com.flir.flironesdk.RenderedImage;
 
-import java.util.EnumSet;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * An example activity and delegate for FLIR One image streaming and device interaction.
@@ -42,18 +55,31 @@ import java.util.EnumSet;
  *
  * @see SystemUiHider
  * @see com.flir.flironesdk.Device.Delegate
- * @see com.flir.flironesdk.FrameProcessor.Delegate
- * @see com.flir.flironesdk.Device.StreamDelegate
  * @see com.flir.flironesdk.Device.PowerUpdateDelegate
  */
-public class MainActivity extends Activity implements Device.Delegate, Device.StreamDelegate, FrameProcessor.Delegate, Device.PowerUpdateDelegate {
+public class MainActivity extends Activity implements Device.Delegate, Device.PowerUpdateDelegate {
     private ImageView thermalImageView;
     private OverlayDrawable overlayDrawable;
-
+    /** Grid sizes the grid button steps through, in panels along the shorter side. */
+    private static final int[] GRID_DIVISIONS = {8, 12, 16, 24, GridGeometry.MAX_DIVISIONS};
+    private final ThermalImageDrawable thermalImageDrawable = new ThermalImageDrawable();
+    // Non-null when the display image is colourized in-app from the radiometric image alone.
+    private Colorizer colorizer = null;
+    // Non-null when frames are composited on a render thread rather than through the ImageView.
+    private SurfaceRenderer surfaceRenderer = null;
+
+    /** How close to a quarter turn the device must come before the grid turns to match. */
+    private static final int ROTATION_SNAP_DEGREES = 30;
+    // The nearest quarter turn to how the device is being held, and whether the rotate button has
+    // turned the display (overlay included) upside down.
     private int deviceRotation = 0;
+    private boolean displayFlipped = false;
     private OrientationEventListener orientationEventListener;
 
     private volatile Device flirOneDevice;
+    // Where frames come from: a FLIR camera (flirFrameSource), a recorded session or a synthetic scene.
+    private FlirFrameSource flirFrameSource = null;
+    private FrameSource frameSource;
 
     // Device Delegate methods
 
@@ -73,9 +99,10 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
 
         flirOneDevice = device;
         flirOneDevice.setPowerUpdateDelegate(this);
-        flirOneDevice.startFrameStream(this);
+        flirOneDevice.startFrameStream(flirFrameSource);
 
         orientationEventListener.enable();
+        requestAnimation();
     }
 
     /**
@@ -84,10 +111,14 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
     public synchronized void onDeviceDisconnected(Device device) {
         final TextView levelTextView = (TextView) findViewById(R.id.batteryLevelTextView);
         final ImageView chargingIndicator = (ImageView) findViewById(R.id.batteryChargeIndicator);
+        thermalImageDrawable.clear();
+        if (surfaceRenderer != null) {
+            surfaceRenderer.requestRender();
+        }
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                thermalImageView.setImageBitmap(Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8));
+                thermalImageView.invalidate();
                 // TODO: Reset overlay
                 levelTextView.setText("--");
                 chargingIndicator.setVisibility(View.GONE);
@@ -110,6 +141,7 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
      */
     public void onTuningStateChanged(Device.TuningState tuningState) {
         currentTuningState = tuningState;
+        flirFrameSource.setTuning(tuningState == Device.TuningState.InProgress);
         if (tuningState == Device.TuningState.InProgress) {
             runOnUiThread(new Thread() {
                 @Override
@@ -181,91 +213,122 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
         });
     }
 
-    private FrameProcessorThread frameProcessorThread = null;
-    private class FrameProcessorThread extends Thread {
-        private FrameProcessor frameProcessor;
-        private Frame frameToProcess = null;
-        private boolean terminating = false;
+    private SessionRecorder sessionRecorder = null;
+    private MidiFileWriter midiWriter = null;
+    private NoteEventQueue midiQueue = null;
+    private NoteSinkThread midiThread = null;
+    private PipelineStats stats;
+    private LatencyHistogram displayLatency;
+    // Non-null when the latency HUD is enabled.
+    private TextView debugHudTextView = null;
 
-        public FrameProcessorThread(Context context, FrameProcessor.Delegate delegate) {
-            frameProcessor = new FrameProcessor(context, delegate, EnumSet.of(RenderedImage.ImageType.ThermalRGBA8888Image,
-                                                                              RenderedImage.ImageType.ThermalRadiometricKelvinImage));
-            start();
-        }
+    // Whether the engine skipped the latest frame as unchanged; frame processing thread only.
+    private boolean frameSkipped = false;
 
-        public void processFrame(Frame frame) {
-            synchronized (this) {
-                frameToProcess = frame;
-                notify();
+    private final FrameSource.Listener frameListener = new FrameSource.Listener() {
+        @Override
+        public void onFrame(RadiometricFrame frame) {
+            frameSkipped = !overlayDrawable.processFrame(frame, currentTuningState.ordinal());
+            if (frameSkipped) {
+                // Nothing changed, and a running animation redraws the playhead by itself.
+                return;
             }
-        }
-
-        public void terminate() {
-            synchronized (this) {
-                terminating = true;
-                notify();
+            if (colorizer != null) {
+                long start = System.nanoTime();
+                boolean resized = thermalImageDrawable.update(colorizer.getPixels(), colorizer.getWidth(), colorizer.getHeight());
+                displayLatency.record(System.nanoTime() - start);
+                onDisplayImageUpdated(resized);
+            }
+            if (surfaceRenderer != null) {
+                surfaceRenderer.requestRender();
+            } else {
+                requestAnimation();
             }
         }
+    };
 
+    private final FlirFrameSource.ImageListener imageListener = new FlirFrameSource.ImageListener() {
         @Override
-        public void run() {
-            while (!terminating) {
-                try {
-                    Frame frame = null;
-                    synchronized(this) {
-                        while ((frameToProcess == null) && terminating) {
-                            wait();
-                        }
-                        frame = frameToProcess;
-                        frameToProcess = null;
-                    }
-                    if (frame != null) {
-                        frameProcessor.processFrame(frame);
-                    }
-                } catch (InterruptedException e) {
-                    Log.e("FrameProcessorThread", "Caught InterruptedException", e);
-                }
+        public void onImage(RenderedImage renderedImage) {
+            if (frameSkipped) {
+                // The SDK's rendering of an unchanged frame is not worth copying and redrawing.
+                return;
             }
+            long start = System.nanoTime();
+            boolean resized = thermalImageDrawable.update(renderedImage);
+            displayLatency.record(System.nanoTime() - start);
+            onDisplayImageUpdated(resized);
         }
     };
 
-    @Override
-    public void onFrameProcessed(final RenderedImage renderedImage) {
-        if (renderedImage.imageType() == RenderedImage.ImageType.ThermalRadiometricKelvinImage) {
-            overlayDrawable.updateThermalImage(renderedImage);
-        } else if (renderedImage.imageType() == RenderedImage.ImageType.ThermalRGBA8888Image) {
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    thermalImageView.setImageBitmap(renderedImage.getBitmap());
-                    Rect oldBounds = overlayDrawable.getBounds();
-                    int imageViewWidth = thermalImageView.getWidth();
-                    int imageViewHeight = thermalImageView.getHeight();
-                    int imageWidth = renderedImage.width();
-                    int imageHeight = renderedImage.height();
-                    if ((imageViewWidth > 0) && (imageViewHeight > 0)) {
-                        double scaleFactor = Math.min(imageViewWidth * 1.0 / imageWidth, imageViewHeight * 1.0 / imageHeight);
-                        int scaledWidth = (int)(imageWidth * scaleFactor);
-                        int scaledHeight = (int)(imageHeight * scaleFactor);
-                        int padLeft = (imageViewWidth - scaledWidth) / 2;
-                        int padTop = (imageViewHeight - scaledHeight) / 2;
-                        Rect newBounds = new Rect(padLeft, padTop, padLeft + scaledWidth, padTop + scaledHeight);
-                        overlayDrawable.setBounds(newBounds);
-                    }
-                }
-            });
+    private void onDisplayImageUpdated(boolean resized) {
+        if (surfaceRenderer != null) {
+            surfaceRenderer.requestRender();
+        } else if (resized) {
+            runOnUiThread(imageResizedRunnable);
+        } else {
+            thermalImageView.postInvalidateOnAnimation();
         }
     }
 
-    // StreamDelegate method
-    public void onFrameReceived(Frame frame){
-        if ((currentTuningState != Device.TuningState.InProgress) && (frameProcessorThread != null)) {
-            frameProcessorThread.processFrame(frame);
+    private final Runnable imageResizedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Re-set the drawable so the ImageView picks up its new intrinsic size.
+            thermalImageView.setImageDrawable(null);
+            thermalImageView.setImageDrawable(thermalImageDrawable);
+            updateOverlayBounds();
         }
+    };
+
+    // Letterboxed position of the thermal image within the view, only recomputed when the view or
+    // image size actually changes.
+    private final Rect overlayBounds = new Rect();
+    private int boundsViewWidth = 0;
+    private int boundsViewHeight = 0;
+    private int boundsImageWidth = 0;
+    private int boundsImageHeight = 0;
+
+    private void updateOverlayBounds() {
+        int imageViewWidth = thermalImageView.getWidth();
+        int imageViewHeight = thermalImageView.getHeight();
+        int imageWidth = thermalImageDrawable.getIntrinsicWidth();
+        int imageHeight = thermalImageDrawable.getIntrinsicHeight();
+        if ((imageViewWidth <= 0) || (imageViewHeight <= 0) || (imageWidth <= 0) || (imageHeight <= 0)) {
+            return;
+        }
+        if ((imageViewWidth == boundsViewWidth) && (imageViewHeight == boundsViewHeight) &&
+                (imageWidth == boundsImageWidth) && (imageHeight == boundsImageHeight)) {
+            return;
+        }
+        boundsViewWidth = imageViewWidth;
+        boundsViewHeight = imageViewHeight;
+        boundsImageWidth = imageWidth;
+        boundsImageHeight = imageHeight;
+        double scaleFactor = Math.min(imageViewWidth * 1.0 / imageWidth, imageViewHeight * 1.0 / imageHeight);
+        int scaledWidth = (int)(imageWidth * scaleFactor);
+        int scaledHeight = (int)(imageHeight * scaleFactor);
+        int padLeft = (imageViewWidth - scaledWidth) / 2;
+        int padTop = (imageViewHeight - scaledHeight) / 2;
+        overlayBounds.set(padLeft, padTop, padLeft + scaledWidth, padTop + scaledHeight);
+        overlayDrawable.setBounds(overlayBounds);
     }
 
     private static final int AUTO_HIDE_DELAY_MILLIS = 3000;
 
+    private static final int HUD_UPDATE_MILLIS = 500;
+
+    /** Frames that may wait for the session recorder's writer before new ones are dropped. */
+    private static final int SESSION_RECORDER_CAPACITY = 32;
+    /** Notes that may wait for the MIDI writer before new ones are dropped - several seconds' worth. */
+    private static final int MIDI_QUEUE_CAPACITY = 1024;
+
+    /** The synthetic frame source mimics a FLIR One's sensor and frame rate. */
+    private static final int SYNTHETIC_WIDTH = 160;
+    private static final int SYNTHETIC_HEIGHT = 120;
+    private static final float SYNTHETIC_FRAMES_PER_SECOND = 8.7f;
+    private static final int SYNTHETIC_BLOBS = 3;
+
     /**
      * The flags to pass to {@link SystemUiHider#getInstance}.
      */
@@ -282,15 +345,46 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
 
     }
 
+    public void onPaletteClicked(View v){
+        if (colorizer != null) {
+            colorizer.setPalette(colorizer.getPalette().next());
+        }
+    }
+
+    public void onGridClicked(View v){
+        int divisions = overlayDrawable.getDivisions();
+        int next = GRID_DIVISIONS[0];
+        for (int option : GRID_DIVISIONS) {
+            if (option > divisions) {
+                next = option;
+                break;
+            }
+        }
+        overlayDrawable.setDivisions(next);
+        ((Button)v).setText(getString(R.string.grid_size, next));
+    }
+
     public void onRotateClicked(View v){
         ToggleButton theSwitch = (ToggleButton)v;
-        if (theSwitch.isChecked()){
+        displayFlipped = theSwitch.isChecked();
+        updateGridRotation();
+        if (surfaceRenderer != null) {
+            surfaceRenderer.setRotation(theSwitch.isChecked() ? 180 : 0);
+        } else if (theSwitch.isChecked()){
             thermalImageView.setRotation(180);
         }else{
             thermalImageView.setRotation(0);
         }
     }
 
+    /**
+     * Turns the grid so that the playhead sweeps and the voices run the same way for the user
+     * however they hold the device.  The activity itself stays in portrait.
+     */
+    private void updateGridRotation() {
+        overlayDrawable.setRotation((deviceRotation + (displayFlipped ? 180 : 0)) % 360);
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -299,7 +393,45 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
 
         thermalImageView = (ImageView) findViewById(R.id.imageView);
         overlayDrawable = new OverlayDrawable(this);
-        thermalImageView.getOverlay().add(overlayDrawable);
+        stats = overlayDrawable.getEngine().getStats();
+        ((Button)findViewById(R.id.gridButton)).setText(getString(R.string.grid_size, overlayDrawable.getDivisions()));
+        displayLatency = stats.get(PipelineStats.Stage.DISPLAY);
+        if (getResources().getBoolean(R.bool.config_debug_hud)) {
+            debugHudTextView = (TextView) findViewById(R.id.debugHudTextView);
+            debugHudTextView.setVisibility(View.VISIBLE);
+        }
+        String source = getResources().getString(R.string.config_frame_source);
+        if ("synthetic".equals(source)) {
+            frameSource = new SyntheticFrameSource(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, SYNTHETIC_FRAMES_PER_SECOND, SYNTHETIC_BLOBS, System.nanoTime());
+        } else if ("replay".equals(source)) {
+            File sessionFile = new File(getExternalFilesDir("sessions"), getResources().getString(R.string.config_replay_session));
+            frameSource = new ReplayFrameSource(sessionFile, true, true);
+        } else {
+            flirFrameSource = new FlirFrameSource(this, getResources().getBoolean(R.bool.config_app_palette), imageListener,
+                                                  stats.get(PipelineStats.Stage.CAPTURE));
+            frameSource = flirFrameSource;
+        }
+        // Only the camera can render its own display image.
+        if ((flirFrameSource == null) || getResources().getBoolean(R.bool.config_app_palette)) {
+            colorizer = new Colorizer(Palette.IRON);
+            overlayDrawable.getEngine().setColorizer(colorizer);
+            findViewById(R.id.paletteButton).setVisibility(View.VISIBLE);
+        }
+        if (getResources().getBoolean(R.bool.config_surface_render)) {
+            SurfaceView surfaceView = (SurfaceView) findViewById(R.id.surfaceView);
+            surfaceRenderer = new SurfaceRenderer(thermalImageDrawable, overlayDrawable);
+            surfaceView.getHolder().addCallback(surfaceRenderer);
+            surfaceView.setVisibility(View.VISIBLE);
+            thermalImageView.setVisibility(View.GONE);
+        } else {
+            thermalImageView.getOverlay().add(overlayDrawable);
+            thermalImageView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View view, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    updateOverlayBounds();
+                }
+            });
+        }
 
         final View controlsView = findViewById(R.id.fullscreen_content_controls);
         final View contentView = findViewById(R.id.fullscreen_content);
@@ -356,7 +488,17 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
         orientationEventListener = new OrientationEventListener(this) {
             @Override
             public void onOrientationChanged(int orientation) {
-                deviceRotation = orientation;
+                if (orientation == ORIENTATION_UNKNOWN) {
+                    return;
+                }
+                // Only snap once well past the halfway point, so holding the device near 45
+                // degrees doesn't flip the grid back and forth.
+                int nearest = ((orientation + 45) / 90) % 4 * 90;
+                int distance = Math.abs(orientation - nearest);
+                if ((nearest != deviceRotation) && (Math.min(distance, 360 - distance) <= ROTATION_SNAP_DEGREES)) {
+                    deviceRotation = nearest;
+                    updateGridRotation();
+                }
             }
         };
 
@@ -387,6 +529,9 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
         setVolumeControlStream(AudioManager.STREAM_MUSIC);
 //        overlayDrawable.reset();
 //        thermalImageView.setImageResource(R.drawable.insert_flir);
+        if (flirFrameSource == null) {
+            return;
+        }
         try {
             Device.startDiscovery(this, this);
         } catch(IllegalStateException e) {
@@ -398,29 +543,114 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
         }
     }
 
-    private Handler animationHandler = new Handler();
-    private Runnable animationRunnable = new Runnable() {
+    // Redraw once per vsync while there is something moving, and stop asking for frames as soon
+    // as there isn't.  Each new camera frame already redraws the view, so a stopped animation
+    // still shows the latest grid.
+    private volatile boolean resumed = false;
+    private volatile boolean animating = false;
+    private final Choreographer.FrameCallback animationCallback = new Choreographer.FrameCallback() {
         @Override
-        public void run() {
+        public void doFrame(long frameTimeNanos) {
             thermalImageView.invalidate();
-            animationHandler.removeCallbacks(this);
-            animationHandler.postDelayed(this, 20);
+            if (shouldAnimate()) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                animating = false;
+            }
+        }
+    };
+    private final Runnable startAnimationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!animating && shouldAnimate()) {
+                animating = true;
+                Choreographer.getInstance().postFrameCallback(animationCallback);
+            }
         }
     };
 
+    private boolean shouldAnimate() {
+        return resumed && (surfaceRenderer == null) && ((flirFrameSource == null) || (flirOneDevice != null)) && (overlayDrawable.getEngine().getToneGrid().getLitCount() > 0);
+    }
+
+    /**
+     * Restarts the vsync-driven animation if it has stopped and there is now something to play.
+     * Safe to call from any thread.
+     */
+    private void requestAnimation() {
+        if (!animating && shouldAnimate()) {
+            runOnUiThread(startAnimationRunnable);
+        }
+    }
+
     @Override
     protected synchronized void onResume() {
         Log.e("Thermori-on", "onResume");
         super.onResume();
-        frameProcessorThread = new FrameProcessorThread(this, this);
+        if (getResources().getBoolean(R.bool.config_record_sessions)) {
+            File sessionFile = new File(getExternalFilesDir("sessions"), "session-" + System.currentTimeMillis() + ".thrf");
+            try {
+                sessionRecorder = new SessionRecorder(sessionFile, SESSION_RECORDER_CAPACITY);
+                overlayDrawable.setRecorder(sessionRecorder);
+                Log.i("Thermori-on", "Recording to " + sessionFile);
+            } catch (IOException e) {
+                Log.e("Thermori-on", "Couldn't start recording to " + sessionFile, e);
+            }
+        }
+        if (getResources().getBoolean(R.bool.config_record_midi)) {
+            startMidiCapture();
+        }
         overlayDrawable.start();
-        animationHandler.postDelayed(animationRunnable, 20);
+        if (flirFrameSource == null) {
+            // There's no camera connection to wait for.
+            orientationEventListener.enable();
+        }
+        frameSource.start(frameListener);
+        resumed = true;
+        requestAnimation();
+        if (debugHudTextView != null) {
+            mHudHandler.post(mHudRunnable);
+        }
 //        if (flirOneDevice != null) {
 //            flirOneDevice.setPowerUpdateDelegate(this);
 //            flirOneDevice.startFrameStream(this);
 //        }
     }
 
+    private void startMidiCapture() {
+        File midiFile = new File(getExternalFilesDir("midi"), "performance-" + System.currentTimeMillis() + ".mid");
+        try {
+            midiWriter = new MidiFileWriter(midiFile);
+        } catch (IOException e) {
+            Log.e("Thermori-on", "Couldn't start capturing to " + midiFile, e);
+            return;
+        }
+        midiQueue = overlayDrawable.getNoteBus().subscribe(MIDI_QUEUE_CAPACITY);
+        midiThread = new NoteSinkThread("MidiFileWriter", midiQueue, midiWriter);
+        midiThread.start();
+        Log.i("Thermori-on", "Capturing MIDI to " + midiFile);
+    }
+
+    private void stopMidiCapture() {
+        if (midiWriter == null) {
+            return;
+        }
+        overlayDrawable.getNoteBus().unsubscribe(midiQueue);
+        midiThread.terminate();
+        try {
+            midiThread.join();
+            midiWriter.close();
+            Log.i("Thermori-on", "MIDI capture finished: " + midiWriter + ", dropped " + midiQueue.getDroppedCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.e("Thermori-on", "MIDI capture failed: " + midiWriter, e);
+        }
+        midiWriter = null;
+        midiQueue = null;
+        midiThread = null;
+    }
+
     @Override
     protected synchronized void onPause() {
         Log.e("Thermori-on", "onPause");
@@ -428,10 +658,35 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
 //            flirOneDevice.stopFrameStream();
 //            flirOneDevice.setPowerUpdateDelegate(null);
 //        }
-        animationHandler.removeCallbacks(animationRunnable);
+        resumed = false;
+        Choreographer.getInstance().removeFrameCallback(animationCallback);
+        animating = false;
+        mHudHandler.removeCallbacks(mHudRunnable);
         overlayDrawable.stop();
-        frameProcessorThread.terminate();
-        frameProcessorThread = null;
+        if (flirFrameSource == null) {
+            orientationEventListener.disable();
+        }
+        stopMidiCapture();
+        overlayDrawable.setRecorder(null);
+        frameSource.stop();
+        if (sessionRecorder != null) {
+            try {
+                sessionRecorder.close();
+                Log.i("Thermori-on", "Recording finished: " + sessionRecorder);
+            } catch (IOException e) {
+                Log.e("Thermori-on", "Recording failed: " + sessionRecorder, e);
+            }
+            sessionRecorder = null;
+        }
+        if (getResources().getBoolean(R.bool.config_dump_stats)) {
+            File statsFile = new File(getExternalFilesDir("stats"), "stats-" + System.currentTimeMillis() + ".txt");
+            try {
+                stats.dump(statsFile);
+                Log.i("Thermori-on", "Dumped latency histograms to " + statsFile);
+            } catch (IOException e) {
+                Log.e("Thermori-on", "Couldn't dump latency histograms to " + statsFile, e);
+            }
+        }
         super.onPause();
     }
 
@@ -440,11 +695,21 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
     public synchronized void onStop() {
         Log.e("Thermori-on", "onStop");
         // We must unregister our usb receiver, otherwise we will steal events from other apps
-        Device.stopDiscovery();
+        if (flirFrameSource != null) {
+            Device.stopDiscovery();
+        }
         flirOneDevice = null;
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        Log.e("Thermori-on", "onDestroy");
+        // Frames stopped arriving in onPause, so the engine's workers can go.
+        overlayDrawable.release();
+        super.onDestroy();
+    }
+
     /**
      * Touch listener to use for in-layout UI controls to delay hiding the
      * system UI. This is to prevent the jarring behavior of controls going away
@@ -475,6 +740,15 @@ public class MainActivity extends Activity implements Device.Delegate, Device.St
         mHideHandler.postDelayed(mHideRunnable, delayMillis);
     }
 
+    Handler mHudHandler = new Handler();
+    Runnable mHudRunnable = new Runnable() {
+        @Override
+        public void run() {
+            debugHudTextView.setText(stats.summarize() + "\n" + overlayDrawable.getVoiceAllocator());
+            mHudHandler.postDelayed(this, HUD_UPDATE_MILLIS);
+        }
+    };
+
     Handler mRetryHandler = new Handler();
     Runnable mRetryRunnable = new Runnable() {
         @Override
@@ -0,0 +1,12 @@
+package com.github.williams.matt.thermorion;
+
+/**
+ * An audio backend that plays the sequencer's notes, reading them off a
+ * {@link com.github.williams.matt.thermorion.engine.NoteEventBus} on a thread of its own between
+ * {@link #start()} and {@link #stop()}.
+ */
+interface NotePlayer {
+    void start();
+
+    void stop();
+}
@@ -1,79 +1,135 @@
 package com.github.williams.matt.thermorion;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.media.AudioManager;
-import android.media.SoundPool;
 import android.util.AttributeSet;
 import android.util.Log;
 
-import com.flir.flironesdk.RenderedImage;
+import com.github.williams.matt.thermorion.engine.GridGeometry;
+import com.github.williams.matt.thermorion.engine.GridOrientation;
+import com.github.williams.matt.thermorion.engine.NoteEventBus;
+import com.github.williams.matt.thermorion.engine.PipelineStats;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+import com.github.williams.matt.thermorion.engine.Sequencer;
+import com.github.williams.matt.thermorion.engine.SequencerThread;
+import com.github.williams.matt.thermorion.engine.SessionRecorder;
+import com.github.williams.matt.thermorion.engine.SpatialFilter;
+import com.github.williams.matt.thermorion.engine.ThermalEngine;
+import com.github.williams.matt.thermorion.engine.ToneGrid;
+import com.github.williams.matt.thermorion.engine.ToneThresholder;
+import com.github.williams.matt.thermorion.engine.VoiceAllocator;
 
 import java.util.Arrays;
-import java.util.Date;
 
 /**
  * Created by mirw on 19/06/16.
+ *
+ * Android front end for the {@link ThermalEngine}: draws its grid and playhead, feeds it
+ * frames and plays its notes through the configured {@link NotePlayer}.
  */
 public class OverlayDrawable extends Drawable implements Drawable.Callback {
-    int width;
-    int height;
-    int panelSize;
-    int numPanelsWide;
-    int numPanelsHigh;
-    int panelXPadding;
-    int panelYPadding;
-    private long startTime;
-    private boolean[] toneArray;
-    private boolean[] animating;
-    private int timeslot;
-    private int tickInTimeslot;
-    private AudioManager audioManager;
-    private SoundPool soundPool;
-    private int soundId;
-    private boolean soundLoaded = false;
-    private SoundThread soundThread = null;
-    private static final double SEMITONE = Math.pow(2.0, 1.0 / 12.0);
-    private static final float SCALE[] = {
-            (float)Math.pow(SEMITONE, 0),
-            (float)Math.pow(SEMITONE, 2),
-            (float)Math.pow(SEMITONE, 4),
-            (float)Math.pow(SEMITONE, 5),
-            (float)Math.pow(SEMITONE, 7),
-            (float)Math.pow(SEMITONE, 9),
-            (float)Math.pow(SEMITONE, 11),
-            (float)Math.pow(SEMITONE, 12)
-    }; // Ionian scale
+    private final ThermalEngine engine;
     private int left;
     private int top;
+    private int divisions = GridGeometry.DEFAULT_DIVISIONS;
+    private final NotePlayer notePlayer;
+    private final VoiceAllocator voiceAllocator;
+    private final NoteEventBus noteBus = new NoteEventBus();
+    private SequencerThread sequencerThread = null;
+    private volatile SessionRecorder recorder = null;
+    private final Paint panelPaint = new Paint();
+    private final Paint highlightPaint = new Paint();
+    private final Paint playheadPaint = new Paint();
+    private final Paint erasePaint = new Paint();
+    private final Canvas backgroundCanvas = new Canvas();
+    private Bitmap backgroundLayer = null;
+    private ToneGrid backgroundGrid = null;
+    private int backgroundGeneration;
+    private int[] changedPanels = new int[0];
+
+    /** Leave the other cores to the SDK, the audio and the UI. */
+    private static final int MAX_AUTO_WORKERS = 4;
 
     public OverlayDrawable(Context context) {
-        // AudioManager audio settings for adjusting the volume
-        audioManager = (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
-
-        // Load the sounds
-        soundPool = new SoundPool(10, AudioManager.STREAM_MUSIC, 0);
-        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
-            @Override
-            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
-                soundLoaded = true;
-            }
-        });
-        soundId = soundPool.load(context, R.raw.piano, 1);
+        panelPaint.setStyle(Paint.Style.STROKE);
+        highlightPaint.setStyle(Paint.Style.STROKE);
+        highlightPaint.setColor(Color.GREEN);
+        playheadPaint.setStyle(Paint.Style.STROKE);
+        playheadPaint.setColor(Color.GREEN);
+        erasePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+
+        Resources resources = context.getResources();
+        int workers = resources.getInteger(R.integer.config_reduction_workers);
+        if (workers <= 0) {
+            workers = Math.min(MAX_AUTO_WORKERS, Runtime.getRuntime().availableProcessors());
+        }
+        engine = new ThermalEngine(workers);
+        SpatialFilter filter = engine.getFilter();
+        filter.setBackgroundRadius(resources.getInteger(R.integer.config_background_radius));
+        filter.setSmoothingRadius(resources.getInteger(R.integer.config_smoothing_radius));
+        filter.setSmoothingPasses(resources.getInteger(R.integer.config_smoothing_passes));
+        ToneThresholder thresholder = engine.getThresholder();
+        thresholder.setSuppressNonMaxima(resources.getBoolean(R.bool.config_suppress_non_maxima));
+        thresholder.setLowOffset(resources.getInteger(R.integer.config_hysteresis_low_offset));
+        thresholder.setOffOffset(resources.getInteger(R.integer.config_tone_off_offset));
+        engine.getTemporalFilter().setWeight(resources.getInteger(R.integer.config_temporal_weight_percent) / 100.0f);
+        engine.getChangeDetector().setTolerance(resources.getInteger(R.integer.config_change_tolerance));
+        divisions = resources.getInteger(R.integer.config_grid_divisions);
+
+        voiceAllocator = new VoiceAllocator(resources.getInteger(R.integer.config_max_voices),
+                VoiceAllocator.Policy.parse(resources.getString(R.string.config_voice_policy)));
+        if (resources.getBoolean(R.bool.config_low_latency_audio)) {
+            notePlayer = new AudioTrackPlayer(context, voiceAllocator, noteBus);
+        } else {
+            notePlayer = new SoundPoolPlayer(context, voiceAllocator, noteBus);
+        }
+    }
+
+    public ThermalEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return every note the sequencer plays, for anything besides the note player that wants them
+     */
+    public NoteEventBus getNoteBus() {
+        return noteBus;
+    }
+
+    /**
+     * @return the polyphony limit on the note player, with its active and stolen voice counts
+     */
+    public VoiceAllocator getVoiceAllocator() {
+        return voiceAllocator;
     }
 
     public void start() {
-        soundThread = new SoundThread();
+        notePlayer.start();
+        sequencerThread = new SequencerThread(engine.getSequencer(), noteBus);
+        sequencerThread.start();
     }
 
     public void stop() {
-        soundThread.terminate();
-        soundThread = null;
+        sequencerThread.terminate();
+        sequencerThread = null;
+        notePlayer.stop();
+        Log.i("OverlayDrawable", "Stopped: " + engine.getStats() + " " + voiceAllocator);
+    }
+
+    /**
+     * Frees the engine's worker threads.  Only once the frame source has stopped for good.
+     */
+    public void release() {
+        engine.shutdown();
     }
 
     @Override
@@ -89,297 +145,209 @@ public class OverlayDrawable extends Drawable implements Drawable.Callback {
     protected synchronized void onBoundsChange(Rect bounds) {
         left = bounds.left;
         top = bounds.top;
-        width = bounds.width();
-        height = bounds.height();
-        panelSize = (int)Math.floor(Math.min((width * 0.95), (height * 0.95)) / 8);
-        numPanelsWide = (int)(width * 0.95) / panelSize;
-        numPanelsHigh = (int)(height * 0.95) / panelSize;
-        panelXPadding = (width - (numPanelsWide * panelSize)) / 2;
-        panelYPadding = (height - (numPanelsHigh * panelSize)) / 2;
-        toneArray = new boolean[numPanelsWide * numPanelsHigh];
-        animating = new boolean[Math.min(numPanelsWide, numPanelsHigh)];
-        startTime = new Date().getTime();
-        timeslot = 0;
-        tickInTimeslot = 0;
+        engine.setBounds(bounds.width(), bounds.height(), divisions, System.nanoTime());
+    }
+
+    public synchronized int getDivisions() {
+        return divisions;
+    }
+
+    /**
+     * Re-lays the grid with the given number of panels along the shorter side, restarting the
+     * sequence.
+     */
+    public synchronized void setDivisions(int divisions) {
+        this.divisions = divisions;
+        Rect bounds = getBounds();
+        engine.setBounds(bounds.width(), bounds.height(), divisions, System.nanoTime());
+    }
+
+    /**
+     * Turns the grid to suit the device being held at the given rotation, keeping the sequence
+     * playing in time.
+     *
+     * @param degrees clockwise from the device's natural orientation: 0, 90, 180 or 270
+     */
+    public void setRotation(int degrees) {
+        engine.setRotation(degrees);
     }
 
     public synchronized void reset() {
         left = 0;
         top = 0;
-        width = 0;
-        height = 0;
-        panelSize = 0;
-        numPanelsWide = 0;
-        numPanelsHigh = 0;
-        panelXPadding = 0;
-        panelYPadding = 0;
-        toneArray = new boolean[numPanelsWide * numPanelsHigh];
-        animating = new boolean[Math.min(numPanelsWide, numPanelsHigh)];
-        startTime = new Date().getTime();
-        timeslot = 0;
-        tickInTimeslot = 0;
+        engine.setBounds(0, 0, System.nanoTime());
     }
 
-    class SoundThread extends Thread {
-        private boolean terminating = false;
-
-        public SoundThread() {
-            start();
+    /**
+     * Brings the cached background layer of idle and lit panels up to date with the tone grid.
+     * If the layer is just one generation behind, only the panels that changed are redrawn.
+     */
+    private void updateBackgroundLayer(ToneGrid toneGrid) {
+        int generation = toneGrid.getGeneration();
+        if ((backgroundLayer != null) && (toneGrid == backgroundGrid)) {
+            if (generation == backgroundGeneration) {
+                return;
+            }
+            int changedCount = toneGrid.copyChanges(backgroundGeneration, changedPanels);
+            if (changedCount >= 0) {
+                GridGeometry geometry = toneGrid.getGeometry();
+                int numPanelsWide = geometry.getNumPanelsWide();
+                GridOrientation orientation = toneGrid.getOrientation();
+                long[] timeslots = toneGrid.getTimeslots();
+                for (int i = 0; i < changedCount; i++) {
+                    int x = changedPanels[i] % numPanelsWide;
+                    int y = changedPanels[i] / numPanelsWide;
+                    drawBackgroundPanel(geometry, x, y, orientation.isLit(timeslots, x, y), true);
+                }
+                // If the tones have moved on again meanwhile, the next frame catches up the rest.
+                backgroundGeneration++;
+                return;
+            }
         }
 
-        public void terminate() {
-            terminating = true;
+        GridGeometry geometry = toneGrid.getGeometry();
+        int width = geometry.getWidth();
+        int height = geometry.getHeight();
+        if ((backgroundLayer == null) || (backgroundLayer.getWidth() != width) || (backgroundLayer.getHeight() != height)) {
+            // As with ThermalImageDrawable's bitmaps, the old layer is left to the GC, not recycled.
+            backgroundLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            backgroundCanvas.setBitmap(backgroundLayer);
+        } else {
+            backgroundLayer.eraseColor(Color.TRANSPARENT);
+        }
+        if (changedPanels.length != geometry.getNumPanels()) {
+            changedPanels = new int[geometry.getNumPanels()];
         }
 
-        @Override
-        public void run() {
-            while (!terminating) {
-                long time = new Date().getTime() - startTime;
-                if ((numPanelsWide > 0) && (numPanelsHigh > 0)) {
-                    int newTimeslot = (int)((time / 250) % (Math.max(numPanelsWide, numPanelsHigh)));
-                    tickInTimeslot = (int)(time % 250);
-
-                    if (newTimeslot != timeslot) {
-                        timeslot = newTimeslot;
-
-                        float actVolume = (float) audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
-                        float maxVolume = (float) audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-                        float volume = actVolume / maxVolume;
-
-                        synchronized (OverlayDrawable.this) {
-                            if (width > height) {
-                                for (int y = 0; y < numPanelsHigh; y++) {
-                                    boolean play = toneArray[timeslot + y * numPanelsWide];
-                                    animating[y] = play;
-                                    if ((play) && (soundLoaded)) {
-                                        soundPool.play(soundId, volume, volume, 1, 0, SCALE[y]);
-                                    }
-                                }
-                            } else {
-                                for (int x = 0; x < numPanelsWide; x++) {
-                                    boolean play = toneArray[x + timeslot * numPanelsWide];
-                                    animating[x] = play;
-                                    if ((play) && (soundLoaded)) {
-                                        soundPool.play(soundId, volume, volume, 1, 0, SCALE[x]);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-                try {
-                    synchronized (this) {
-                        wait(10);
-                    }
-                } catch (InterruptedException e) {
-                    // Ignore.
-                }
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        GridOrientation orientation = toneGrid.getOrientation();
+        long[] timeslots = toneGrid.getTimeslots();
+        for (int x = 0; x < numPanelsWide; x++) {
+            for (int y = 0; y < numPanelsHigh; y++) {
+                drawBackgroundPanel(geometry, x, y, orientation.isLit(timeslots, x, y), false);
             }
         }
+        backgroundGrid = toneGrid;
+        backgroundGeneration = generation;
+    }
+
+    private void drawBackgroundPanel(GridGeometry geometry, int x, int y, boolean lit, boolean erase) {
+        int panelSize = geometry.getPanelSize();
+        int panelXPadding = geometry.getPanelXPadding();
+        int panelYPadding = geometry.getPanelYPadding();
+        if (erase) {
+            backgroundCanvas.drawRect(panelXPadding + panelSize * x, panelYPadding + panelSize * y, panelXPadding + panelSize * (x + 1), panelYPadding + panelSize * (y + 1), erasePaint);
+        }
+        float panelLeft = panelXPadding + panelSize * x + 10;
+        float panelTop = panelYPadding + panelSize * y + 10;
+        float panelRight = panelXPadding + panelSize * (x + 1) - 10;
+        float panelBottom = panelYPadding + panelSize * (y + 1) - 10;
+        panelPaint.setColor(Color.BLACK);
+        panelPaint.setStrokeWidth(8);
+        backgroundCanvas.drawRoundRect(panelLeft, panelTop, panelRight, panelBottom, 5, 5, panelPaint);
+        if (lit) {
+            panelPaint.setColor(Color.WHITE);
+            panelPaint.setStrokeWidth(4);
+            backgroundCanvas.drawRoundRect(panelLeft, panelTop, panelRight, panelBottom, 5, 5, panelPaint);
+        }
     }
 
     @Override
     public synchronized void draw(Canvas canvas) {
+        ToneGrid toneGrid = engine.getToneGrid();
+        GridGeometry geometry = toneGrid.getGeometry();
+        int width = geometry.getWidth();
+        int height = geometry.getHeight();
+        int panelSize = geometry.getPanelSize();
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        int panelXPadding = geometry.getPanelXPadding();
+        int panelYPadding = geometry.getPanelYPadding();
+        Sequencer sequencer = engine.getSequencer();
+        long drawStart = System.nanoTime();
+        long playheadMillis = sequencer.getPlayheadMillis(drawStart);
+        int timeslot = (int)(playheadMillis / Sequencer.STEP_MILLIS);
+        int tickInTimeslot = (int)(playheadMillis % Sequencer.STEP_MILLIS);
         if ((numPanelsWide > 0) && (numPanelsHigh > 0)) {
-            Paint paint = new Paint();
-            paint.setStyle(Paint.Style.STROKE);
-
-            for (int x = 0; x < numPanelsWide; x++) {
-                for (int y = 0; y < numPanelsHigh; y++) {
-                    if ((width > height) && (timeslot == x) && (animating[y]) ||
-                            (width <= height) && (timeslot == y) && (animating[x])) {
-                        // We'll do this just below, after we've drawn all the "background" entries...
-                    }
-                    else if (toneArray[x + y * numPanelsWide]) {
-                        paint.setColor(Color.BLACK);
-                        paint.setStrokeWidth(8);
-                        canvas.drawRoundRect(left + panelXPadding + panelSize * x + 10, top + panelYPadding + panelSize * y + 10, left + panelXPadding + panelSize * (x + 1) - 10, top + panelYPadding + panelSize * (y + 1) - 10, 5, 5, paint);
-                        paint.setColor(Color.WHITE);
-                        paint.setStrokeWidth(4);
-                        canvas.drawRoundRect(left + panelXPadding + panelSize * x + 10, top + panelYPadding + panelSize * y + 10, left + panelXPadding + panelSize * (x + 1) - 10, top + panelYPadding + panelSize * (y + 1) - 10, 5, 5, paint);
-                    } else {
-                        paint.setColor(Color.BLACK);
-                        paint.setStrokeWidth(8);
-                        canvas.drawRoundRect(left + panelXPadding + panelSize * x + 10, top + panelYPadding + panelSize * y + 10, left + panelXPadding + panelSize * (x + 1) - 10, top + panelYPadding + panelSize * (y + 1) - 10, 5, 5, paint);
-                    }
-                }
-            }
+            updateBackgroundLayer(toneGrid);
+            canvas.drawBitmap(backgroundLayer, left, top, null);
 
-            for (int x = 0; x < numPanelsWide; x++) {
-                for (int y = 0; y < numPanelsHigh; y++) {
-                    if ((width > height) && (timeslot == x) && (animating[y]) ||
-                            (width <= height) && (timeslot == y) && (animating[x])) {
-                        float effect;
-                        if (tickInTimeslot < 75) {
-                            effect = tickInTimeslot / 75.0f;
-                        } else if (tickInTimeslot < 150) {
-                            effect = 1.0f - (tickInTimeslot - 75.0f) / 150.0f;
-                        } else {
-                            effect = 0.5f - (tickInTimeslot - 150.0f) / 200.0f;
-                        }
-                        paint.setColor(Color.GREEN);
-                        paint.setStrokeWidth(panelSize / (5 - effect));
-                        canvas.drawRoundRect(left + panelXPadding + panelSize * x + 10 - 10 * effect, top + panelYPadding + panelSize * y + 10 - 10 * effect, left + panelXPadding + panelSize * (x + 1) - 10 + 10 * effect, top + panelYPadding + panelSize * (y + 1) - 10 + 10 * effect, 5, 5, paint);
-                    }
+            // Only the panels under the playhead animate.
+            float effect;
+            if (tickInTimeslot < 75) {
+                effect = tickInTimeslot / 75.0f;
+            } else if (tickInTimeslot < 150) {
+                effect = 1.0f - (tickInTimeslot - 75.0f) / 150.0f;
+            } else {
+                effect = 0.5f - (tickInTimeslot - 150.0f) / 200.0f;
+            }
+            highlightPaint.setStrokeWidth(panelSize / (5 - effect));
+            GridOrientation orientation = toneGrid.getOrientation();
+            int numVoices = geometry.getNumVoices();
+            for (int voice = 0; voice < numVoices; voice++) {
+                if (sequencer.isAnimating(timeslot, voice)) {
+                    int panel = orientation.getPanel(timeslot, voice);
+                    int x = panel % numPanelsWide;
+                    int y = panel / numPanelsWide;
+                    canvas.drawRoundRect(left + panelXPadding + panelSize * x + 10 - 10 * effect, top + panelYPadding + panelSize * y + 10 - 10 * effect, left + panelXPadding + panelSize * (x + 1) - 10 + 10 * effect, top + panelYPadding + panelSize * (y + 1) - 10 + 10 * effect, 5, 5, highlightPaint);
                 }
             }
 
             float strokeWidth = Math.min(width, height) / 100;
+            Paint paint = playheadPaint;
             paint.setStrokeWidth(strokeWidth);
-            paint.setColor(Color.GREEN);
 
-            if (width > height) {
-                int x = (int)((timeslot * 250 + tickInTimeslot) * panelSize / 250 + panelXPadding);
+            // The trail fades out behind the playhead, whichever way it is sweeping.
+            int sweep = (int)((timeslot * Sequencer.STEP_MILLIS + tickInTimeslot) * panelSize / Sequencer.STEP_MILLIS);
+            float trail = orientation.isSweepReversed() ? -strokeWidth : strokeWidth;
+            if (orientation.isSweepAlongX()) {
+                int x = orientation.isSweepReversed() ? panelXPadding + numPanelsWide * panelSize - sweep : panelXPadding + sweep;
                 paint.setAlpha(31);
-                canvas.drawLine(left + x - strokeWidth * 2, top, left + x - strokeWidth * 2, top + height, paint);
+                canvas.drawLine(left + x - trail * 2, top, left + x - trail * 2, top + height, paint);
                 paint.setAlpha(63);
-                canvas.drawLine(left + x - strokeWidth, top, left + x - strokeWidth, top + height, paint);
+                canvas.drawLine(left + x - trail, top, left + x - trail, top + height, paint);
                 paint.setAlpha(127);
                 canvas.drawLine(left + x, top, left + x, top + height, paint);
                 paint.setAlpha(255);
-                canvas.drawLine(left + x + strokeWidth, top, left + x + strokeWidth, top + height, paint);
+                canvas.drawLine(left + x + trail, top, left + x + trail, top + height, paint);
                 paint.setAlpha(127);
-                canvas.drawLine(left + x + strokeWidth * 2, top, left + x + strokeWidth * 2, top + height, paint);
+                canvas.drawLine(left + x + trail * 2, top, left + x + trail * 2, top + height, paint);
             } else {
-                int y = (int)((timeslot * 250 + tickInTimeslot) * panelSize / 250 + panelYPadding);
+                int y = orientation.isSweepReversed() ? panelYPadding + numPanelsHigh * panelSize - sweep : panelYPadding + sweep;
                 paint.setAlpha(31);
-                canvas.drawLine(left, top + y - strokeWidth * 2, left + width, top + y - strokeWidth * 2, paint);
+                canvas.drawLine(left, top + y - trail * 2, left + width, top + y - trail * 2, paint);
                 paint.setAlpha(63);
-                canvas.drawLine(left, top + y - strokeWidth, left + width, top + y - strokeWidth, paint);
+                canvas.drawLine(left, top + y - trail, left + width, top + y - trail, paint);
                 paint.setAlpha(127);
                 canvas.drawLine(left, top + y, left + width, top + y, paint);
                 paint.setAlpha(255);
-                canvas.drawLine(left, top + y + strokeWidth, left + width, top + y + strokeWidth, paint);
+                canvas.drawLine(left, top + y + trail, left + width, top + y + trail, paint);
                 paint.setAlpha(127);
-                canvas.drawLine(left, top + y + strokeWidth * 2, left + width, top + y + strokeWidth * 2, paint);
+                canvas.drawLine(left, top + y + trail * 2, left + width, top + y + trail * 2, paint);
             }
         }
+        engine.getStats().get(PipelineStats.Stage.DRAW).record(System.nanoTime() - drawStart);
     }
 
-    public void updateThermalImage(RenderedImage renderedImage) {
-        if ((numPanelsWide > 0) && (numPanelsHigh > 0)) {
-            short[] thermalData = new short[numPanelsWide * numPanelsHigh];
-            long thermalTotal = 0;
-            short thermalMinimum = Short.MAX_VALUE;
-            short thermalMaximum = Short.MIN_VALUE;
-            int renderedImageWidth = renderedImage.width();
-            int renderedImageHeight = renderedImage.height();
-            short[] pix = renderedImage.thermalPixelData();
-            for (int y = 0; y < numPanelsHigh; y++) {
-                for (int x = 0; x < numPanelsWide; x++) {
-                    float scaleX = renderedImage.width() * 1.0f / width;
-                    float scaleY = renderedImage.height() * 1.0f / height;
-                    int startX = (int)((panelXPadding + panelSize * x + 10) * scaleX);
-                    int endX = (int)((panelXPadding + panelSize * (x + 1) - 10) * scaleX);
-                    int startY = (int)((panelYPadding + panelSize * y + 10) * scaleY);
-                    int endY = (int)((panelYPadding + panelSize * (y + 1) - 10) * scaleY);
-                    long accumulator = 0;
-                    for (int y2 = startY; y2 <= endY ; y2 ++) {
-                        for (int x2 = startX; x2 <= endX ; x2 ++) {
-                            accumulator += pix[x2 + y2 * renderedImageWidth];
-                        }
-                    }
-                    short result = (short)(accumulator / (endX - startX + 1) / (endY - startY + 1));
-                    thermalData[x + numPanelsWide * y] = result;
-                    thermalTotal += result;
-                    thermalMinimum = (short)Math.min(thermalMinimum, result);
-                    thermalMaximum = (short)Math.max(thermalMaximum, result);
-                }
-            }
-            /*
-            short[] thermalLocalMean = new short[numPanelsWide * numPanelsHigh];
-            for (int y = 0; y < numPanelsHigh; y++) {
-                for (int x = 0; x < numPanelsWide; x++) {
-                    int localTotal = 0;
-                    short localCount = 0;
-                    if (x > 0) {
-                        localTotal += thermalData[x - 1 + numPanelsWide * y];
-                        localCount++;
-                    }
-                    if (y > 0) {
-                        localTotal += thermalData[x + numPanelsWide * (y - 1)];
-                        localCount++;
-                    }
-                    if (x < numPanelsWide - 1) {
-                        localTotal += thermalData[x + 1 + numPanelsWide * y];
-                        localCount++;
-                    }
-                    if (y < numPanelsHigh - 1) {
-                        localTotal += thermalData[x + numPanelsWide * (y + 1)];
-                        localCount++;
-                    }
-                    thermalLocalMean[x + numPanelsWide * y] = (short)(localTotal / localCount);
-                }
-            }
-            */
-            /*
-            short[] thermalLocalMean2 = new short[numPanelsWide * numPanelsHigh];
-            for (int y = 0; y < numPanelsHigh; y++) {
-                for (int x = 0; x < numPanelsWide; x++) {
-                    int localTotal = 0;
-                    short localCount = 0;
-                    if (x > 0) {
-                        localTotal += thermalLocalMean[x - 1 + numPanelsWide * y];
-                        localCount++;
-                    }
-                    if (y > 0) {
-                        localTotal += thermalLocalMean[x + numPanelsWide * (y - 1)];
-                        localCount++;
-                    }
-                    if (x < numPanelsWide - 1) {
-                        localTotal += thermalLocalMean[x + 1 + numPanelsWide * y];
-                        localCount++;
-                    }
-                    if (y < numPanelsHigh - 1) {
-                        localTotal += thermalLocalMean[x + numPanelsWide * (y + 1)];
-                        localCount++;
-                    }
-                    thermalLocalMean[x + numPanelsWide * y] = (short)(localTotal / localCount);
-                }
-            }
-            */
-            /*
-            for (int y = 0; y < numPanelsHigh; y++) {
-                for (int x = 0; x < numPanelsWide; x++) {
-                    short result = (short)(thermalData[x + numPanelsWide * y] - thermalLocalMean[x + numPanelsWide * y]);// - thermalLocalMean2[x + numPanelsWide * y]);
-                    thermalData[x + numPanelsWide * y] = result;
-                    thermalTotal += result;
-                    thermalMinimum = (short)Math.min(thermalMinimum, result);
-                    thermalMaximum = (short)Math.max(thermalMaximum, result);
-                }
-            }
-            */
-            short thermalAverage = (short)(thermalTotal / (numPanelsWide * numPanelsHigh));
-            short thermalThreshold = (short)(thermalAverage + 50);
-            boolean[] newToneArray = new boolean[numPanelsWide * numPanelsHigh];
-            for (int y = 0; y < numPanelsHigh; y++) {
-                for (int x = 0; x < numPanelsWide; x++) {
-                    short thermalValue = thermalData[x + numPanelsWide * y];
-                    /*
-                    int greaterCount = 0;
-                    if (thermalValue > thermalThreshold) {
-                        if ((x > 0) && (thermalData[x - 1 + numPanelsWide * y] > thermalValue)) {
-                            greaterCount++;
-                        }
-                        if ((y > 0) && (thermalData[x + numPanelsWide * (y - 1)] > thermalValue)) {
-                            greaterCount++;
-                        }
-                        if ((x < numPanelsWide - 1) && (thermalData[x + 1 + numPanelsWide * y] > thermalValue)) {
-                            greaterCount++;
-                        }
-                        if ((y < numPanelsHigh - 1) && (thermalData[x + numPanelsWide * (y + 1)] > thermalValue)) {
-                            greaterCount++;
-                        }
-                    }
-                    */
-                    newToneArray[x + numPanelsWide * y] = (thermalValue > thermalThreshold);
-                }
-            }
+    /**
+     * @param recorder records every frame passed to {@link #processFrame}, or null to stop
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
 
-            synchronized (this) {
-                toneArray = newToneArray;
-            }
+    /**
+     * @param tuningState the Device.TuningState ordinal the frame was captured in, for recording
+     * @return false if the engine skipped the frame as unchanged, so nothing needs redrawing
+     */
+    public boolean processFrame(RadiometricFrame frame, int tuningState) {
+        boolean processed = engine.processFrame(frame);
+        SessionRecorder sessionRecorder = recorder;
+        if (sessionRecorder != null) {
+            sessionRecorder.record(frame, tuningState, engine.getGeometry());
         }
+        return processed;
     }
 
     @Override
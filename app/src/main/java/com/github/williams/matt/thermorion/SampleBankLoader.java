@@ -0,0 +1,83 @@
+package com.github.williams.matt.thermorion;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.util.Log;
+
+import com.github.williams.matt.thermorion.engine.PcmSample;
+import com.github.williams.matt.thermorion.engine.SampleBank;
+import com.github.williams.matt.thermorion.engine.Scale;
+import com.github.williams.matt.thermorion.engine.WavDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Decodes the piano sample and pre-renders it at every scale degree on a background thread.
+ */
+final class SampleBankLoader {
+    private static final String TAG = "SampleBankLoader";
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    private SampleBankLoader() {
+    }
+
+    /**
+     * @return a future that completes once the bank is ready to play
+     */
+    static Future<SampleBank> load(final Context context, final int outputRate) {
+        FutureTask<SampleBank> task = new FutureTask<>(new Callable<SampleBank>() {
+            @Override
+            public SampleBank call() throws IOException {
+                long startTime = System.nanoTime();
+                PcmSample sample;
+                InputStream in = context.getResources().openRawResource(R.raw.piano);
+                try {
+                    sample = WavDecoder.decode(in);
+                } finally {
+                    in.close();
+                }
+                long decodedTime = System.nanoTime();
+                SampleBank bank = SampleBank.render(sample, outputRate, Scale.getPitches());
+                long renderedTime = System.nanoTime();
+                Log.i(TAG, String.format("Decoded in %.1fms, rendered %d voices at %dHz in %.1fms, %d KiB",
+                        (decodedTime - startTime) / 1e6, bank.getNumVoices(), outputRate,
+                        (renderedTime - decodedTime) / 1e6, bank.getFootprintBytes() / 1024));
+                return bank;
+            }
+        });
+        new Thread(task, TAG).start();
+        return task;
+    }
+
+    /**
+     * @return the future's result, or null if it is not ready (or failed)
+     */
+    static <T> T getIfDone(Future<T> future) {
+        if (!future.isDone()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    static int getOutputSampleRate(AudioManager audioManager) {
+        return getIntProperty(audioManager, AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
+    }
+
+    static int getIntProperty(AudioManager audioManager, String key, int defaultValue) {
+        String value = audioManager.getProperty(key);
+        try {
+            return (value != null) ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.williams.matt.thermorion;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.util.Log;
+
+import com.github.williams.matt.thermorion.engine.NoteEventBus;
+import com.github.williams.matt.thermorion.engine.NoteEventQueue;
+import com.github.williams.matt.thermorion.engine.NoteSink;
+import com.github.williams.matt.thermorion.engine.NoteSinkThread;
+import com.github.williams.matt.thermorion.engine.SampleBank;
+import com.github.williams.matt.thermorion.engine.VoiceAllocator;
+import com.github.williams.matt.thermorion.engine.WavEncoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Plays notes through SoundPool.  Each scale degree is loaded as its own pre-rendered sound and
+ * played at its natural rate, so SoundPool never has to pitch-shift.
+ *
+ * SoundPool is given one stream per allocator slot, and a note whose slot is stolen is stopped
+ * explicitly, so SoundPool's own stream limit never decides which notes are heard.
+ *
+ * Notes are played on a {@link NoteSinkThread} of our own, so the volume lookup and SoundPool's
+ * binder calls never hold up the sequencer.
+ */
+class SoundPoolPlayer implements NotePlayer, NoteSink {
+    private static final int QUEUE_CAPACITY = 256;
+
+    private AudioManager audioManager;
+    private SoundPool soundPool;
+    private final Future<SampleBank> sampleBank;
+    private final Future<int[]> soundIds;
+    private final VoiceAllocator allocator;
+    private final int[] streamIds;
+    private final NoteEventBus bus;
+    private NoteEventQueue queue = null;
+    private NoteSinkThread thread = null;
+    private float volume;
+    private long stepOnsetNanos;
+
+    /**
+     * @param allocator limits and assigns SoundPool streams, timed in System.nanoTime()
+     * @param bus the notes to play, subscribed to while playing
+     */
+    public SoundPoolPlayer(final Context context, VoiceAllocator allocator, NoteEventBus bus) {
+        this.allocator = allocator;
+        this.bus = bus;
+        streamIds = new int[allocator.getNumSlots()];
+        // AudioManager audio settings for adjusting the volume
+        audioManager = (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
+
+        // Load the sounds
+        soundPool = new SoundPool(allocator.getNumSlots(), AudioManager.STREAM_MUSIC, 0);
+        sampleBank = SampleBankLoader.load(context, SampleBankLoader.getOutputSampleRate(audioManager));
+        FutureTask<int[]> task = new FutureTask<>(new Callable<int[]>() {
+            @Override
+            public int[] call() throws Exception {
+                SampleBank bank = sampleBank.get();
+                final CountDownLatch loaded = new CountDownLatch(bank.getNumVoices());
+                soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+                    @Override
+                    public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                        loaded.countDown();
+                    }
+                });
+                File dir = new File(context.getCacheDir(), "samples");
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Failed to create " + dir);
+                }
+                int[] ids = new int[bank.getNumVoices()];
+                for (int i = 0; i < ids.length; i++) {
+                    File file = new File(dir, "voice" + i + ".wav");
+                    OutputStream out = new FileOutputStream(file);
+                    try {
+                        WavEncoder.encode(bank.getVoice(i), bank.getSampleRate(), out);
+                    } finally {
+                        out.close();
+                    }
+                    ids[i] = soundPool.load(file.getPath(), 1);
+                }
+                loaded.await();
+                Log.i("SoundPoolPlayer", "Loaded " + ids.length + " sounds");
+                return ids;
+            }
+        });
+        new Thread(task, "SoundPoolPlayer").start();
+        soundIds = task;
+    }
+
+    @Override
+    public void start() {
+        queue = bus.subscribe(QUEUE_CAPACITY);
+        thread = new NoteSinkThread("SoundPoolPlayer", queue, this);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        if (thread != null) {
+            bus.unsubscribe(queue);
+            thread.terminate();
+            // The allocator must be done with before a restarted thread uses it.
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Log.i("SoundPoolPlayer", "Stopped: " + allocator + " queueDropped=" + queue.getDroppedCount());
+            thread = null;
+            queue = null;
+        }
+    }
+
+    @Override
+    public void onStep(int timeslot, long onsetNanos) {
+        float actVolume = (float) audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+        float maxVolume = (float) audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+        volume = actVolume / maxVolume;
+        stepOnsetNanos = onsetNanos;
+    }
+
+    @Override
+    public void noteOn(int degree, float pitch) {
+        int[] ids = SampleBankLoader.getIfDone(soundIds);
+        if ((ids == null) || (degree >= ids.length)) {
+            return;
+        }
+        SampleBank bank = SampleBankLoader.getIfDone(sampleBank);
+        long durationNanos = bank.getVoice(degree).length * 1000000000L / bank.getSampleRate();
+        int slot = allocator.allocate(stepOnsetNanos, stepOnsetNanos + durationNanos, degree, volume);
+        if (slot < 0) {
+            return;
+        }
+        if (streamIds[slot] != 0) {
+            // A no-op if the stream has already finished.
+            soundPool.stop(streamIds[slot]);
+        }
+        streamIds[slot] = soundPool.play(ids[degree], volume, volume, 1, 0, 1.0f);
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.williams.matt.thermorion;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Process;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional render path in which a dedicated thread owns a SurfaceView's surface and composites
+ * the latest thermal image, the grid and the playhead itself, so the UI thread never touches
+ * per-frame graphics.
+ *
+ * The thread renders at display rate (lockCanvas() blocks until a buffer is free) while the grid
+ * is playing, and otherwise sleeps until a new frame arrives.
+ */
+class SurfaceRenderer implements SurfaceHolder.Callback {
+    private static final long RETRY_NANOS = 16000000L;
+
+    private final ThermalImageDrawable thermalImageDrawable;
+    private final OverlayDrawable overlayDrawable;
+    private volatile float rotation = 0;
+    private volatile RenderThread renderThread = null;
+
+    public SurfaceRenderer(ThermalImageDrawable thermalImageDrawable, OverlayDrawable overlayDrawable) {
+        this.thermalImageDrawable = thermalImageDrawable;
+        this.overlayDrawable = overlayDrawable;
+    }
+
+    public void setRotation(float degrees) {
+        rotation = degrees;
+        requestRender();
+    }
+
+    /**
+     * Asks for a redraw, e.g. because a new frame has arrived or the grid has changed.  Safe to
+     * call from any thread.
+     */
+    public void requestRender() {
+        RenderThread thread = renderThread;
+        if (thread != null) {
+            thread.invalidate();
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        renderThread.setSize(width, height);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface must not be touched once we return, so wait for the thread to finish.
+        RenderThread thread = renderThread;
+        renderThread = null;
+        thread.terminate();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Log.e("SurfaceRenderer", "Interrupted waiting for render thread", e);
+        }
+    }
+
+    private class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+        private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final Rect destRect = new Rect();
+        private volatile boolean running = true;
+        private volatile boolean dirty = true;
+        private volatile int surfaceWidth = 0;
+        private volatile int surfaceHeight = 0;
+
+        public RenderThread(SurfaceHolder holder) {
+            super("RenderThread");
+            this.holder = holder;
+        }
+
+        public void setSize(int width, int height) {
+            surfaceWidth = width;
+            surfaceHeight = height;
+            invalidate();
+        }
+
+        public void invalidate() {
+            dirty = true;
+            LockSupport.unpark(this);
+        }
+
+        public void terminate() {
+            running = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+            while (running) {
+                boolean fresh = thermalImageDrawable.swap();
+                Bitmap bitmap = thermalImageDrawable.getBitmap();
+                boolean animating = (bitmap != null) && (overlayDrawable.getEngine().getToneGrid().getLitCount() > 0);
+                if (!dirty && !animating && !fresh) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                dirty = false;
+                Canvas canvas = holder.lockCanvas();
+                if (canvas == null) {
+                    // Surface isn't ready yet - back off rather than spin, then try again.
+                    dirty = true;
+                    LockSupport.parkNanos(this, RETRY_NANOS);
+                    continue;
+                }
+                try {
+                    draw(canvas, bitmap);
+                } finally {
+                    holder.unlockCanvasAndPost(canvas);
+                }
+            }
+        }
+
+        private void draw(Canvas canvas, Bitmap bitmap) {
+            canvas.drawColor(Color.BLACK);
+            int width = surfaceWidth;
+            int height = surfaceHeight;
+            if ((bitmap == null) || (width <= 0) || (height <= 0)) {
+                return;
+            }
+            int imageWidth = bitmap.getWidth();
+            int imageHeight = bitmap.getHeight();
+            double scaleFactor = Math.min(width * 1.0 / imageWidth, height * 1.0 / imageHeight);
+            int scaledWidth = (int)(imageWidth * scaleFactor);
+            int scaledHeight = (int)(imageHeight * scaleFactor);
+            int padLeft = (width - scaledWidth) / 2;
+            int padTop = (height - scaledHeight) / 2;
+            destRect.set(padLeft, padTop, padLeft + scaledWidth, padTop + scaledHeight);
+            overlayDrawable.setBounds(destRect);
+
+            canvas.save();
+            canvas.rotate(rotation, width / 2.0f, height / 2.0f);
+            canvas.drawBitmap(bitmap, null, destRect, bitmapPaint);
+            overlayDrawable.draw(canvas);
+            canvas.restore();
+        }
+    }
+}
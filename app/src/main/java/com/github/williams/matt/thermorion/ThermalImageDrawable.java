@@ -0,0 +1,144 @@
+package com.github.williams.matt.thermorion;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+import com.flir.flironesdk.RenderedImage;
+import com.github.williams.matt.thermorion.engine.Colorizer;
+import com.github.williams.matt.thermorion.engine.TripleBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Shows the thermal image stream without allocating a bitmap per frame.  Incoming pixels are copied
+ * into a triple-buffered pool of three bitmaps, and drawing just shows whichever was published
+ * last, so the view keeps the same drawable for the whole session.
+ *
+ * {@link #update(RenderedImage)} is called from the frame processing thread, and
+ * {@link #swap()}/{@link #draw(Canvas)} from the single thread that renders it.
+ */
+class ThermalImageDrawable extends Drawable {
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // The pool last published to the rendering thread, and the one the frame thread is filling.
+    private volatile TripleBuffer<Bitmap> pool = null;
+    private TripleBuffer<Bitmap> backPool = null;
+    private volatile int imageWidth = -1;
+    private volatile int imageHeight = -1;
+    // Set between clear() and the next update, which keeps the pool for reuse.
+    private volatile boolean blank = true;
+    // The pool the rendering thread last swapped from.
+    private TripleBuffer<Bitmap> frontPool = null;
+
+    /**
+     * Copies the latest RGBA frame into the pool.
+     *
+     * @return true if the image size changed (or this is the first frame), so the pool was
+     *         reallocated and anything laid out around the image needs updating
+     */
+    public boolean update(RenderedImage renderedImage) {
+        boolean resized = prepare(renderedImage.width(), renderedImage.height());
+        backPool.getBack().copyPixelsFromBuffer(ByteBuffer.wrap(renderedImage.pixelData()));
+        backPool.publish();
+        pool = backPool;
+        blank = false;
+        return resized;
+    }
+
+    /**
+     * Copies a frame rendered in-app, e.g. by a {@link Colorizer}, into the pool.
+     *
+     * @see #update(RenderedImage)
+     */
+    public boolean update(int[] argb, int width, int height) {
+        boolean resized = prepare(width, height);
+        backPool.getBack().setPixels(argb, 0, width, 0, 0, width, height);
+        backPool.publish();
+        pool = backPool;
+        blank = false;
+        return resized;
+    }
+
+    private boolean prepare(int width, int height) {
+        boolean resized = (backPool == null) || (width != imageWidth) || (height != imageHeight);
+        if (resized) {
+            // The old bitmaps may still be on screen, so leave them to the GC rather than recycling.
+            backPool = new TripleBuffer<>(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888),
+                                          Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888),
+                                          Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+            imageWidth = width;
+            imageHeight = height;
+        }
+        return resized;
+    }
+
+    /**
+     * Blanks the image, e.g. when the camera disconnects.  The pool is kept, so a camera that
+     * reconnects at the same resolution allocates nothing.
+     */
+    public void clear() {
+        blank = true;
+    }
+
+    /**
+     * Picks up the most recently published frame.
+     *
+     * @return whether the bitmap returned by {@link #getBitmap()} has changed
+     */
+    public boolean swap() {
+        if (blank) {
+            boolean changed = (frontPool != null);
+            frontPool = null;
+            return changed;
+        }
+        TripleBuffer<Bitmap> current = pool;
+        if (current != frontPool) {
+            frontPool = current;
+            if (current != null) {
+                current.swap();
+            }
+            return true;
+        }
+        return (current != null) && current.swap();
+    }
+
+    /**
+     * @return the bitmap picked up by the last {@link #swap()}, or null if there is none
+     */
+    public Bitmap getBitmap() {
+        return (frontPool != null) ? frontPool.getFront() : null;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        swap();
+        Bitmap bitmap = getBitmap();
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, null, getBounds(), paint);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public void setAlpha(int i) {}
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+    }
+    @Override
+    public int getOpacity() {
+        return PixelFormat.OPAQUE;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.williams.matt.thermorion.benchmarks;
+
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+import com.github.williams.matt.thermorion.engine.SyntheticFrameSource;
+
+/**
+ * Frames for the benchmarks, rendered up front by the engine's {@link SyntheticFrameSource} so
+ * that generating them isn't part of what's measured.
+ */
+final class BenchmarkFrames {
+    /** The FLIR One's frame rate, which sets how far the blobs drift between frames. */
+    private static final float FRAMES_PER_SECOND = 8.7f;
+    private static final int NUM_BLOBS = 3;
+
+    private BenchmarkFrames() {
+    }
+
+    /**
+     * @return count consecutive frames, each with its own pixels
+     */
+    static RadiometricFrame[] render(int width, int height, int count, long seed) {
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height, FRAMES_PER_SECOND, NUM_BLOBS, seed);
+        RadiometricFrame[] frames = new RadiometricFrame[count];
+        for (int i = 0; i < count; i++) {
+            // The source renders every frame into the same one, so copy each out.
+            RadiometricFrame rendered = source.render(i, i);
+            frames[i] = new RadiometricFrame(width, height);
+            System.arraycopy(rendered.getPixels(), 0, frames[i].getPixels(), 0, width * height);
+        }
+        return frames;
+    }
+
+    /**
+     * @param resolution e.g. "160x120"
+     */
+    static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+}
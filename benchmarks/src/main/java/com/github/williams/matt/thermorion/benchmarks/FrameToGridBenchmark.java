@@ -0,0 +1,134 @@
+package com.github.williams.matt.thermorion.benchmarks;
+
+import com.github.williams.matt.thermorion.engine.Colorizer;
+import com.github.williams.matt.thermorion.engine.GridGeometry;
+import com.github.williams.matt.thermorion.engine.Palette;
+import com.github.williams.matt.thermorion.engine.PanelReducer;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+import com.github.williams.matt.thermorion.engine.SpatialFilter;
+import com.github.williams.matt.thermorion.engine.ThermalEngine;
+import com.github.williams.matt.thermorion.engine.ToneThresholder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the panel averaging and thresholding that back OverlayDrawable.updateThermalImage with
+ * synthetic radiometric frames, across the FLIR sensor resolutions and a range of grid densities.
+ *
+ * Run with the GC profiler (the :benchmarks:jmh task does) to get bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FrameToGridBenchmark {
+    /** Square view bounds, so that the divisions parameter gives an exactly N x N grid. */
+    private static final int VIEW_SIZE = 1000;
+    private static final int NUM_FRAMES = 8;
+
+    @Param({"80x60", "160x120", "320x240", "640x480"})
+    public String sensor;
+
+    @Param({"8", "16", "24", "32"})
+    public int grid;
+
+    private ThermalEngine engine;
+    private PanelReducer reducer;
+    private ToneThresholder thresholder;
+    private Colorizer colorizer;
+    private SpatialFilter featureFilter;
+    private ToneThresholder featureThresholder;
+    private boolean[] tones;
+    private RadiometricFrame[] frames;
+    private int nextFrame;
+
+    @Setup
+    public void setUp() {
+        int[] resolution = BenchmarkFrames.parseResolution(sensor);
+        frames = BenchmarkFrames.render(resolution[0], resolution[1], NUM_FRAMES, 42);
+
+        engine = new ThermalEngine();
+        engine.setBounds(VIEW_SIZE, VIEW_SIZE, grid, 0);
+        GridGeometry geometry = engine.getGeometry();
+        reducer = new PanelReducer(geometry, resolution[0], resolution[1]);
+        thresholder = new ToneThresholder();
+        tones = new boolean[geometry.getNumPanels()];
+        colorizer = new Colorizer(Palette.IRON);
+        featureFilter = new SpatialFilter();
+        featureFilter.setBackgroundRadius(2);
+        featureFilter.setSmoothingPasses(2);
+        featureThresholder = new ToneThresholder();
+        featureThresholder.setSuppressNonMaxima(true);
+        featureThresholder.setLowOffset(ToneThresholder.DEFAULT_OFFSET / 2);
+        reducer.reduce(frames[0]);
+    }
+
+    private RadiometricFrame nextFrame() {
+        RadiometricFrame frame = frames[nextFrame];
+        nextFrame = (nextFrame + 1) % NUM_FRAMES;
+        return frame;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long[] framesPerSecond() {
+        engine.processFrame(nextFrame());
+        return engine.getToneGrid().getTimeslots();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long[] nanosPerFrame() {
+        engine.processFrame(nextFrame());
+        return engine.getToneGrid().getTimeslots();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void reduceOnly(Blackhole blackhole) {
+        reducer.reduce(nextFrame());
+        blackhole.consume(reducer.getPanelValues());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean[] thresholdOnly() {
+        thresholder.threshold(reducer.getGeometry(), reducer.getPanelValues(), reducer.getAverage(), tones);
+        return tones;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int[] colorizeOnly() {
+        colorizer.colorize(nextFrame(), reducer.getPixelMinimum(), reducer.getPixelMaximum());
+        return colorizer.getPixels();
+    }
+
+    /** Every spatial feature stage switched on, to compare against thresholdOnly. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean[] featuresAndThreshold() {
+        short[] values = featureFilter.apply(reducer.getGeometry(), reducer.getPanelValues());
+        featureThresholder.threshold(reducer.getGeometry(), values, featureFilter.getAverage(), tones);
+        return tones;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.williams.matt.thermorion.benchmarks;
+
+import com.github.williams.matt.thermorion.engine.GridGeometry;
+import com.github.williams.matt.thermorion.engine.PanelReducer;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How {@link PanelReducer} scales with the number of row-stripe workers.  One worker is the serial
+ * summed-area table path, for comparison.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParallelReductionBenchmark {
+    private static final int VIEW_SIZE = 1000;
+    private static final int NUM_FRAMES = 8;
+
+    @Param({"160x120", "320x240", "640x480", "1280x960"})
+    public String sensor;
+
+    @Param({"8", "32"})
+    public int grid;
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    private ForkJoinPool pool;
+    private PanelReducer reducer;
+    private RadiometricFrame[] frames;
+    private int nextFrame;
+
+    @Setup
+    public void setUp() {
+        int[] resolution = BenchmarkFrames.parseResolution(sensor);
+        frames = BenchmarkFrames.render(resolution[0], resolution[1], NUM_FRAMES, 42);
+        pool = (workers > 1) ? new ForkJoinPool(workers) : null;
+        reducer = new PanelReducer(new GridGeometry(VIEW_SIZE, VIEW_SIZE, grid), resolution[0], resolution[1], pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public short[] reduce() {
+        reducer.reduce(frames[nextFrame]);
+        nextFrame = (nextFrame + 1) % NUM_FRAMES;
+        return reducer.getPanelValues();
+    }
+}
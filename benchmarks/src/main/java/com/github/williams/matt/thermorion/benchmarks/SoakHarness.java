@@ -0,0 +1,286 @@
+package com.github.williams.matt.thermorion.benchmarks;
+
+import com.github.williams.matt.thermorion.engine.Colorizer;
+import com.github.williams.matt.thermorion.engine.LatencyHistogram;
+import com.github.williams.matt.thermorion.engine.MidiFileWriter;
+import com.github.williams.matt.thermorion.engine.NoteEventBus;
+import com.github.williams.matt.thermorion.engine.NoteEventQueue;
+import com.github.williams.matt.thermorion.engine.NoteSink;
+import com.github.williams.matt.thermorion.engine.NoteSinkThread;
+import com.github.williams.matt.thermorion.engine.Palette;
+import com.github.williams.matt.thermorion.engine.PipelineStats;
+import com.github.williams.matt.thermorion.engine.RadiometricFrame;
+import com.github.williams.matt.thermorion.engine.Sequencer;
+import com.github.williams.matt.thermorion.engine.SyntheticFrameSource;
+import com.github.williams.matt.thermorion.engine.ThermalEngine;
+import com.github.williams.matt.thermorion.engine.VoiceAllocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Pushes a long session of synthetic frames through the same {@link ThermalEngine} and
+ * {@link Sequencer} the app drives, as fast as the JVM allows, to catch throughput and latency
+ * regressions and leaks that only show up after hours of live use.
+ *
+ * Time is virtual: frame n arrives at n / fps seconds and the sequencer is stepped at exactly the
+ * deadlines it asks for, plus an optional seeded wake-up jitter standing in for the scheduler.  So
+ * an hour's session runs in seconds, and the sequence of notes is the same on every run.  Notes
+ * are published on a {@link NoteEventBus} as in the app, and drained after every step into a sink
+ * that checks each step lands on the sequencer's step grid and runs the note through a
+ * {@link VoiceAllocator}, taking every note to last noteMillis, to show how often voices are
+ * stolen.
+ *
+ * Options are key=value pairs, e.g. {@code minutes=60 sensor=160x120 fps=8.7 view=1080x1920
+ * blobs=3 seed=1 jitterMicros=2000 colorize=true changeTolerance=20 voices=16 policy=newest
+ * noteMillis=2000 midi=soak.mid}.  Given midi, every note is also written to that file by a
+ * {@link MidiFileWriter} on its own thread, as the app captures performances.  Run with
+ * {@code ./gradlew :benchmarks:soak}.
+ */
+public final class SoakHarness {
+    private static final int HEAP_CHECKPOINTS = 10;
+    private static final int CHECK_QUEUE_CAPACITY = 1024;
+    /** Virtual time runs far faster than real time, so the MIDI writer needs a deep queue. */
+    private static final int MIDI_QUEUE_CAPACITY = 1 << 16;
+
+    private SoakHarness() {
+    }
+
+    private static final class CheckingSink implements NoteSink {
+        private final long startTime;
+        private final VoiceAllocator allocator;
+        private final long noteNanos;
+        private long onsetNanos;
+        long steps;
+        long notes;
+        long offGridSteps;
+        long skippedSteps;
+        private long lastStep = -1;
+
+        CheckingSink(long startTime, VoiceAllocator allocator, long noteNanos) {
+            this.startTime = startTime;
+            this.allocator = allocator;
+            this.noteNanos = noteNanos;
+        }
+
+        @Override
+        public void onStep(int timeslot, long onsetNanos) {
+            long offset = onsetNanos - startTime;
+            if (offset % Sequencer.STEP_NANOS != 0) {
+                offGridSteps++;
+            }
+            long step = offset / Sequencer.STEP_NANOS;
+            if ((lastStep >= 0) && (step > lastStep + 1)) {
+                skippedSteps += step - lastStep - 1;
+            }
+            lastStep = step;
+            steps++;
+            this.onsetNanos = onsetNanos;
+        }
+
+        @Override
+        public void noteOn(int degree, float pitch) {
+            notes++;
+            allocator.allocate(onsetNanos, onsetNanos + noteNanos, degree, 1.0f);
+        }
+
+        /**
+         * Steps are only expected back to back while the grid stays lit.
+         */
+        void onIdle() {
+            lastStep = -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        double minutes = 60;
+        int[] sensor = {160, 120};
+        float fps = 8.7f;
+        int[] view = {1080, 1920};
+        int blobs = 3;
+        long seed = 1;
+        int jitterMicros = 0;
+        boolean colorize = false;
+        int changeTolerance = 0;
+        int voices = 16;
+        VoiceAllocator.Policy policy = VoiceAllocator.Policy.NEWEST;
+        int noteMillis = 2000;
+        File midiFile = null;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = pair[0];
+            String value = pair[1];
+            if (key.equals("minutes")) {
+                minutes = Double.parseDouble(value);
+            } else if (key.equals("sensor")) {
+                sensor = BenchmarkFrames.parseResolution(value);
+            } else if (key.equals("fps")) {
+                fps = Float.parseFloat(value);
+            } else if (key.equals("view")) {
+                view = BenchmarkFrames.parseResolution(value);
+            } else if (key.equals("blobs")) {
+                blobs = Integer.parseInt(value);
+            } else if (key.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else if (key.equals("jitterMicros")) {
+                jitterMicros = Integer.parseInt(value);
+            } else if (key.equals("colorize")) {
+                colorize = Boolean.parseBoolean(value);
+            } else if (key.equals("changeTolerance")) {
+                changeTolerance = Integer.parseInt(value);
+            } else if (key.equals("voices")) {
+                voices = Integer.parseInt(value);
+            } else if (key.equals("policy")) {
+                policy = VoiceAllocator.Policy.valueOf(value.toUpperCase());
+            } else if (key.equals("noteMillis")) {
+                noteMillis = Integer.parseInt(value);
+            } else if (key.equals("midi")) {
+                midiFile = new File(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        if ((fps <= 0) || (jitterMicros < 0) || (jitterMicros * 1000L >= Sequencer.STEP_NANOS)) {
+            throw new IllegalArgumentException("Need fps > 0 and 0 <= jitterMicros < one step");
+        }
+        long frameCount = Math.max(1, (long)(minutes * 60 * fps));
+        System.out.printf("Soak: %d frames (%.1f virtual minutes) of %dx%d at %.1f fps onto a %dx%d view, %d blobs, seed %d, jitter %dus, change tolerance %d%s, %d %s voices of %dms%n",
+                frameCount, minutes, sensor[0], sensor[1], fps, view[0], view[1], blobs, seed, jitterMicros,
+                changeTolerance, colorize ? ", colorized" : "", voices, policy, noteMillis);
+        run(frameCount, sensor, fps, view, blobs, seed, jitterMicros, colorize, changeTolerance,
+                new VoiceAllocator(voices, policy), noteMillis * 1000000L, midiFile);
+    }
+
+    private static void run(long frameCount, int[] sensor, float fps, int[] view, int blobs, long seed,
+                            int jitterMicros, boolean colorize, int changeTolerance, VoiceAllocator allocator,
+                            long noteNanos, File midiFile) throws IOException {
+        SyntheticFrameSource source = new SyntheticFrameSource(sensor[0], sensor[1], fps, blobs, seed);
+        ThermalEngine engine = new ThermalEngine();
+        if (colorize) {
+            engine.setColorizer(new Colorizer(Palette.IRON));
+        }
+        engine.getChangeDetector().setTolerance(changeTolerance);
+        long startTime = 0;
+        engine.setBounds(view[0], view[1], startTime);
+        Sequencer sequencer = engine.getSequencer();
+        CheckingSink sink = new CheckingSink(startTime, allocator, noteNanos);
+        NoteEventBus bus = new NoteEventBus();
+        NoteEventQueue checkQueue = bus.subscribe(CHECK_QUEUE_CAPACITY);
+        MidiFileWriter midiWriter = null;
+        NoteEventQueue midiQueue = null;
+        NoteSinkThread midiThread = null;
+        if (midiFile != null) {
+            midiWriter = new MidiFileWriter(midiFile);
+            midiQueue = bus.subscribe(MIDI_QUEUE_CAPACITY);
+            midiThread = new NoteSinkThread("MidiFileWriter", midiQueue, midiWriter);
+            midiThread.start();
+        }
+        Random jitter = new Random(seed);
+
+        long busyNanos = 0;
+        long[] heapUsed = new long[HEAP_CHECKPOINTS + 1];
+        long checkpointInterval = Math.max(1, frameCount / HEAP_CHECKPOINTS);
+        int checkpoints = 0;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = (threads instanceof com.sun.management.ThreadMXBean) ?
+                (com.sun.management.ThreadMXBean)threads : null;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytes = 0;
+
+        long frameNanos = (long)(1000000000L / fps);
+        long due = Sequencer.IDLE;
+        heapUsed[checkpoints++] = usedHeapAfterGc();
+        long wallStart = System.nanoTime();
+        for (long n = 0; n < frameCount; n++) {
+            long now = startTime + n * frameNanos;
+            RadiometricFrame frame = source.render(n, now);
+
+            long allocatedBefore = (allocations != null) ? allocations.getThreadAllocatedBytes(threadId) : 0;
+            long arrived = System.nanoTime();
+            engine.processFrame(frame);
+            if (due == Sequencer.IDLE) {
+                // As the frame thread's wake() would.
+                due = sequencer.advance(now, bus);
+                drain(bus, checkQueue, sink);
+            }
+            // Step the sequencer through every deadline before the next frame arrives.
+            long nextFrame = now + frameNanos;
+            while (due < nextFrame) {
+                long wake = due + ((jitterMicros > 0) ? jitter.nextInt(jitterMicros) * 1000L : 0);
+                due = sequencer.advance(wake, bus);
+                drain(bus, checkQueue, sink);
+                if (due == Sequencer.IDLE) {
+                    sink.onIdle();
+                }
+            }
+            busyNanos += System.nanoTime() - arrived;
+            if (allocations != null) {
+                allocatedBytes += allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+
+            if ((n + 1) % checkpointInterval == 0 && (checkpoints < heapUsed.length)) {
+                heapUsed[checkpoints++] = usedHeapAfterGc();
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+
+        PipelineStats stats = engine.getStats();
+        LatencyHistogram process = stats.get(PipelineStats.Stage.PROCESS);
+        System.out.printf("Throughput: %.0f frames/s through the pipeline, %.0f frames/s including frame synthesis%n",
+                frameCount * 1e9 / Math.max(1, busyNanos), frameCount * 1e9 / Math.max(1, wallNanos));
+        System.out.printf("Skipped %d of %d frames as unchanged (%.1f%%)%n", stats.getSkippedCount(),
+                stats.getFrameCount(), stats.getSkipRate() * 100);
+        System.out.printf("Frame to grid latency of processed frames: p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                process.getPercentileNanos(0.5) / 1e3, process.getPercentileNanos(0.9) / 1e3,
+                process.getPercentileNanos(0.99) / 1e3, process.getPercentileNanos(0.999) / 1e3, process.getMaxNanos() / 1e3);
+        System.out.printf("Sequencer: %d steps, %d notes, %d skipped steps, %d off-grid steps; onset %s; step %s%n",
+                sink.steps, sink.notes, sink.skippedSteps, sink.offGridSteps, sequencer.getOnsetLatency(),
+                sequencer.getStepLatency());
+        System.out.printf("Voice allocator: %s%n", allocator);
+        if (midiWriter != null) {
+            bus.unsubscribe(midiQueue);
+            midiThread.terminate();
+            try {
+                midiThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            midiWriter.close();
+            System.out.printf("MIDI: %s, %d events dropped%n", midiWriter, midiQueue.getDroppedCount());
+        }
+        if (checkQueue.getDroppedCount() > 0) {
+            System.out.printf("Checking sink dropped %d events%n", checkQueue.getDroppedCount());
+        }
+        if (allocations != null) {
+            System.out.printf("Allocated %.1f bytes/frame in the pipeline%n", allocatedBytes / (double)frameCount);
+        }
+        StringBuilder heap = new StringBuilder();
+        for (int i = 0; i < checkpoints; i++) {
+            heap.append(i == 0 ? "" : " ").append(heapUsed[i] / 1024).append('K');
+        }
+        System.out.printf("Heap after GC at each tenth of the run: %s (growth %+dK after the first tenth)%n",
+                heap, (heapUsed[checkpoints - 1] - heapUsed[Math.min(1, checkpoints - 1)]) / 1024);
+    }
+
+    /**
+     * Hands a step's events to the MIDI writer, if any, and checks them here.
+     */
+    private static void drain(NoteEventBus bus, NoteEventQueue queue, NoteSink sink) {
+        bus.flush();
+        while (queue.poll()) {
+            queue.dispatch(sink);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.Arrays;
+
+/**
+ * Cheaply tells whether a frame differs meaningfully from the last one that was accepted, so a
+ * static scene need not be reduced again.
+ *
+ * The frame is divided into 16x16 pixel blocks and every 4th pixel in each direction is summed
+ * per block, touching 1/16 of the pixels.  Averaging 16 samples per block keeps sensor noise from
+ * counting as change, while comparing against the last accepted frame rather than the previous
+ * one means a slow drift still shows up once it adds up.
+ *
+ * Only ever used from the frame processing thread, apart from the tolerance setter.
+ */
+public final class ChangeDetector {
+    private static final int BLOCK_SHIFT = 4;
+    private static final int STRIDE = 4;
+
+    private volatile int tolerance = 0;
+    private int width = 0;
+    private int height = 0;
+    private int blocksWide;
+    private int[] counts = new int[0];
+    private int[] sums = new int[0];
+    private int[] reference = new int[0];
+    private boolean primed = false;
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @param tolerance how far, in hundredths of a Kelvin, any block's mean may move before the
+     *                  frame counts as changed - 0 treats every frame as changed
+     */
+    public void setTolerance(int tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Samples the frame and compares it with the last accepted one.
+     *
+     * @return true if the frame should be processed
+     */
+    public boolean hasChanged(RadiometricFrame frame) {
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        if ((frameWidth != width) || (frameHeight != height)) {
+            resize(frameWidth, frameHeight);
+        }
+        int[] blockSums = sums;
+        Arrays.fill(blockSums, 0);
+        short[] pixels = frame.getPixels();
+        for (int y = STRIDE / 2; y < height; y += STRIDE) {
+            int row = y * width;
+            int blockRow = (y >> BLOCK_SHIFT) * blocksWide;
+            for (int x = STRIDE / 2; x < width; x += STRIDE) {
+                blockSums[blockRow + (x >> BLOCK_SHIFT)] += pixels[row + x];
+            }
+        }
+        int limit = tolerance;
+        if (!primed || (limit <= 0)) {
+            return true;
+        }
+        for (int i = 0; i < blockSums.length; i++) {
+            if (Math.abs(blockSums[i] - reference[i]) > limit * counts[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes the frame last passed to {@link #hasChanged} the one later frames are compared with.
+     */
+    public void accept() {
+        int[] swap = reference;
+        reference = sums;
+        sums = swap;
+        primed = true;
+    }
+
+    private void resize(int newWidth, int newHeight) {
+        width = newWidth;
+        height = newHeight;
+        blocksWide = ((width - 1) >> BLOCK_SHIFT) + 1;
+        int blocksHigh = ((height - 1) >> BLOCK_SHIFT) + 1;
+        int numBlocks = (width > 0 && height > 0) ? blocksWide * blocksHigh : 0;
+        counts = new int[numBlocks];
+        sums = new int[numBlocks];
+        reference = new int[numBlocks];
+        for (int y = STRIDE / 2; y < height; y += STRIDE) {
+            for (int x = STRIDE / 2; x < width; x += STRIDE) {
+                counts[(y >> BLOCK_SHIFT) * blocksWide + (x >> BLOCK_SHIFT)]++;
+            }
+        }
+        primed = false;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Renders radiometric frames to ARGB through a {@link Palette}, auto-ranged so the coldest pixel
+ * maps to the start of the palette and the hottest to the end.
+ *
+ * This lets the app ask the FLIR SDK for the radiometric image alone instead of having it render
+ * an RGBA image as well.  The output buffer is reused from frame to frame.
+ */
+public class Colorizer {
+    private volatile Palette palette;
+    private int[] pixels = new int[0];
+    private int width;
+    private int height;
+
+    public Colorizer(Palette palette) {
+        this.palette = palette;
+    }
+
+    public Palette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Takes effect from the next frame.  Safe to call from any thread.
+     */
+    public void setPalette(Palette palette) {
+        this.palette = palette;
+    }
+
+    /**
+     * Colourizes a frame whose pixel range is already known, e.g. from {@link PanelReducer}.
+     */
+    public void colorize(RadiometricFrame frame, short minimum, short maximum) {
+        width = frame.getWidth();
+        height = frame.getHeight();
+        int count = width * height;
+        if (pixels.length != count) {
+            pixels = new int[count];
+        }
+        int[] colors = palette.getColors();
+        short[] pix = frame.getPixels();
+        // Fixed point 16.16 scale from temperature offset to palette index.
+        int range = Math.max(1, maximum - minimum);
+        int scale = ((Palette.SIZE - 1) << 16) / range;
+        for (int i = 0; i < count; i++) {
+            int index = ((pix[i] - minimum) * scale + 0x8000) >> 16;
+            pixels[i] = colors[Math.max(0, Math.min(Palette.SIZE - 1, index))];
+        }
+    }
+
+    /**
+     * Colourizes a frame, scanning it for its pixel range first.
+     */
+    public void colorize(RadiometricFrame frame) {
+        short[] pix = frame.getPixels();
+        int count = frame.getWidth() * frame.getHeight();
+        short minimum = Short.MAX_VALUE;
+        short maximum = Short.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            minimum = (short)Math.min(minimum, pix[i]);
+            maximum = (short)Math.max(maximum, pix[i]);
+        }
+        colorize(frame, minimum, maximum);
+    }
+
+    /**
+     * @return the ARGB output of the last frame, row-major - only valid on the frame thread
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer "latest wins" handoff between the FLIR stream delegate and the
+ * frame processing thread.
+ *
+ * The producer never blocks: offering a frame replaces any frame the consumer has not picked up
+ * yet (counting it as dropped) and unparks the consumer.  The consumer parks until there is
+ * something to do, so an idle stream costs no CPU.
+ */
+public class FrameMailbox<T> {
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private volatile Thread consumer = null;
+    private volatile boolean closed = false;
+
+    /**
+     * Publishes the latest item, superseding any item that has not yet been taken.
+     */
+    public void offer(T item) {
+        received.incrementAndGet();
+        if (slot.getAndSet(item) != null) {
+            dropped.incrementAndGet();
+        }
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Waits for the next item.  Must only be called from the single consumer thread.
+     *
+     * @return the latest item, or null once the mailbox has been closed
+     */
+    public T take() throws InterruptedException {
+        if (consumer == null) {
+            consumer = Thread.currentThread();
+        }
+        while (!closed) {
+            T item = slot.getAndSet(null);
+            if (item != null) {
+                return item;
+            }
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records that the consumer has finished with an item returned by {@link #take()}.
+     */
+    public void markProcessed() {
+        processed.incrementAndGet();
+    }
+
+    /**
+     * Wakes the consumer and makes all further calls to {@link #take()} return null.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "received=" + getReceivedCount() + " dropped=" + getDroppedCount() + " processed=" + getProcessedCount();
+    }
+}
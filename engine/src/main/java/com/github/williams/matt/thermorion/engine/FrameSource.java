@@ -0,0 +1,24 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Somewhere radiometric frames come from: a thermal camera, a recorded session or a synthetic
+ * scene.  Frames are delivered on a thread owned by the source.
+ */
+public interface FrameSource {
+    interface Listener {
+        /**
+         * @param frame only valid until this call returns - the source reuses it for the next frame
+         */
+        void onFrame(RadiometricFrame frame);
+    }
+
+    /**
+     * Starts delivering frames to the listener.
+     */
+    void start(Listener listener);
+
+    /**
+     * Stops delivering frames.  No calls to the listener are made once this returns.
+     */
+    void stop();
+}
@@ -0,0 +1,119 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Layout of the Tenori-on panel grid within a view of a given size.  The grid is square-celled,
+ * with the shorter side divided into a fixed number of panels and the remainder used as padding.
+ *
+ * All coordinates are relative to the top-left corner of the view.
+ */
+public final class GridGeometry {
+    public static final int DEFAULT_DIVISIONS = 8;
+    /** The densest grid offered; {@link Scale} has a note for every voice of it. */
+    public static final int MAX_DIVISIONS = 32;
+    /** Gap between a panel's outer cell edge and its drawn (and sampled) rectangle. */
+    public static final int PANEL_INSET = 10;
+
+    private final int width;
+    private final int height;
+    private final int panelSize;
+    private final int numPanelsWide;
+    private final int numPanelsHigh;
+    private final int panelXPadding;
+    private final int panelYPadding;
+
+    public GridGeometry(int width, int height) {
+        this(width, height, DEFAULT_DIVISIONS);
+    }
+
+    /**
+     * @param divisions number of panels along the shorter side, clamped to 1..{@link #MAX_DIVISIONS}
+     */
+    public GridGeometry(int width, int height, int divisions) {
+        this.width = width;
+        this.height = height;
+        divisions = Math.max(1, Math.min(divisions, MAX_DIVISIONS));
+        int size = (int)Math.floor(Math.min((width * 0.95), (height * 0.95)) / divisions);
+        if (size > 0) {
+            panelSize = size;
+            numPanelsWide = (int)(width * 0.95) / panelSize;
+            numPanelsHigh = (int)(height * 0.95) / panelSize;
+            panelXPadding = (width - (numPanelsWide * panelSize)) / 2;
+            panelYPadding = (height - (numPanelsHigh * panelSize)) / 2;
+        } else {
+            panelSize = 0;
+            numPanelsWide = 0;
+            numPanelsHigh = 0;
+            panelXPadding = 0;
+            panelYPadding = 0;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPanelSize() {
+        return panelSize;
+    }
+
+    public int getNumPanelsWide() {
+        return numPanelsWide;
+    }
+
+    public int getNumPanelsHigh() {
+        return numPanelsHigh;
+    }
+
+    public int getNumPanels() {
+        return numPanelsWide * numPanelsHigh;
+    }
+
+    public int getPanelXPadding() {
+        return panelXPadding;
+    }
+
+    public int getPanelYPadding() {
+        return panelYPadding;
+    }
+
+    public boolean isEmpty() {
+        return (numPanelsWide <= 0) || (numPanelsHigh <= 0);
+    }
+
+    /**
+     * The playhead sweeps along the longer side, so in landscape it steps through columns and
+     * plays rows; in portrait it steps through rows and plays columns.
+     */
+    public boolean isLandscape() {
+        return width > height;
+    }
+
+    public int getNumTimeslots() {
+        return Math.max(numPanelsWide, numPanelsHigh);
+    }
+
+    /**
+     * @return the number of panels that can sound in a single timeslot
+     */
+    public int getNumVoices() {
+        return isLandscape() ? numPanelsHigh : numPanelsWide;
+    }
+
+    /**
+     * @return the left edge of column x's cell (before {@link #PANEL_INSET} is applied)
+     */
+    public int getPanelLeft(int x) {
+        return panelXPadding + panelSize * x;
+    }
+
+    /**
+     * @return the top edge of row y's cell (before {@link #PANEL_INSET} is applied)
+     */
+    public int getPanelTop(int y) {
+        return panelYPadding + panelSize * y;
+    }
+}
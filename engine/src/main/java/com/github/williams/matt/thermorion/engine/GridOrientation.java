@@ -0,0 +1,105 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Which panel of a {@link GridGeometry} each voice of each timeslot is, with the device turned
+ * through one of the four quarter turns, so that the playhead always sweeps left to right (or
+ * top to bottom) and the voices always run the same way for whoever is holding it.
+ *
+ * The sweep stays on the view's longer side whichever way up the device is (see
+ * {@link GridGeometry#isLandscape()}), so turning it only ever reverses the sweep, the voices or
+ * both - the numbers of timeslots and voices never change.  Both directions of the mapping are
+ * precomputed as index tables, so nothing is worked out per step or per frame.
+ */
+public final class GridOrientation {
+    private final int rotation;
+    private final int numPanelsWide;
+    private final int numVoices;
+    private final boolean sweepAlongX;
+    private final boolean sweepReversed;
+    // Panel x + y * numPanelsWide of each timeslot * numVoices + voice, and the reverse.
+    private final int[] panels;
+    private final int[] panelTimeslots;
+    private final int[] panelVoices;
+
+    /**
+     * @param rotation clockwise quarter turns of the device from its natural orientation, 0 to 3
+     */
+    GridOrientation(GridGeometry geometry, int rotation) {
+        this.rotation = rotation;
+        numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        int numPanels = geometry.getNumPanels();
+        numVoices = geometry.getNumVoices();
+        panels = new int[numPanels];
+        panelTimeslots = new int[numPanels];
+        panelVoices = new int[numPanels];
+
+        // As the holder sees it, across (u) and down (v) the view.
+        boolean quarterTurn = (rotation & 1) != 0;
+        boolean landscape = quarterTurn ? geometry.getHeight() > geometry.getWidth() : geometry.isLandscape();
+        boolean uAlongX = !quarterTurn;
+        boolean uReversed = (rotation == 1) || (rotation == 2);
+        boolean vReversed = (rotation == 2) || (rotation == 3);
+        sweepAlongX = landscape == uAlongX;
+        sweepReversed = landscape ? uReversed : vReversed;
+        for (int y = 0; y < numPanelsHigh; y++) {
+            for (int x = 0; x < numPanelsWide; x++) {
+                int u = uAlongX ? x : y;
+                int v = uAlongX ? y : x;
+                if (uReversed) {
+                    u = (uAlongX ? numPanelsWide : numPanelsHigh) - 1 - u;
+                }
+                if (vReversed) {
+                    v = (uAlongX ? numPanelsHigh : numPanelsWide) - 1 - v;
+                }
+                int timeslot = landscape ? u : v;
+                int voice = landscape ? v : u;
+                int panel = x + y * numPanelsWide;
+                panels[timeslot * numVoices + voice] = panel;
+                panelTimeslots[panel] = timeslot;
+                panelVoices[panel] = voice;
+            }
+        }
+    }
+
+    /**
+     * @return the device rotation this is for, in degrees clockwise
+     */
+    public int getRotation() {
+        return rotation * 90;
+    }
+
+    /**
+     * @return the index, x + y * numPanelsWide, of the panel that plays voice in timeslot
+     */
+    public int getPanel(int timeslot, int voice) {
+        return panels[timeslot * numVoices + voice];
+    }
+
+    /**
+     * @param timeslots a tone state from {@link ToneGrid#getTimeslots()} published with this
+     *                  orientation
+     */
+    public boolean isLit(long[] timeslots, int x, int y) {
+        int panel = x + y * numPanelsWide;
+        return ((timeslots[panelTimeslots[panel]] >>> panelVoices[panel]) & 1) != 0;
+    }
+
+    /**
+     * @return whether the playhead moves along the view's x axis, rather than its y axis
+     */
+    public boolean isSweepAlongX() {
+        return sweepAlongX;
+    }
+
+    /**
+     * @return whether the playhead moves towards the view's left (or top) edge
+     */
+    public boolean isSweepReversed() {
+        return sweepReversed;
+    }
+
+    int[] getPanels() {
+        return panels;
+    }
+}
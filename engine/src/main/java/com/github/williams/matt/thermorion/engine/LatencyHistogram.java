@@ -0,0 +1,112 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.PrintWriter;
+
+/**
+ * Fixed-memory histogram of latencies in nanoseconds, with log-linear buckets in the style of
+ * HdrHistogram: exact below 16ns, then 16 buckets per power of two, so any recorded value is
+ * known to within 1/16 (about 6%) from a nanosecond up to 2^41ns, about 36 minutes.
+ *
+ * Recording is a few shifts and an array increment, so it can stay on in production.  Each
+ * histogram must only be written by a single thread; other threads may read at any time and see a
+ * slightly stale but never torn view.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final int[] buckets = new int[NUM_BUCKETS];
+    private volatile long count;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return (long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    static long upperBoundOf(int bucket) {
+        return (bucket + 1 < NUM_BUCKETS) ? lowerBoundOf(bucket + 1) : MAX_VALUE + 1;
+    }
+
+    /**
+     * @param nanos negative values (e.g. from a clock that stepped) count as 0, and values beyond
+     *              the range land in the last bucket
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        buckets[bucketOf(value)]++;
+        totalNanos += value;
+        if (value > maxNanos) {
+            maxNanos = value;
+        }
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanNanos() {
+        long count = this.count;
+        return (count > 0) ? totalNanos / count : 0;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @param fraction e.g. 0.99 for the 99th percentile
+     * @return the upper edge of the bucket containing the given percentile
+     */
+    public long getPercentileNanos(double fraction) {
+        long count = this.count;
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Writes every non-empty bucket as "lower upper count", one per line, bounds in nanoseconds.
+     */
+    public void writeBuckets(PrintWriter writer) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            int bucketCount = buckets[i];
+            if (bucketCount > 0) {
+                writer.println(lowerBoundOf(i) + " " + upperBoundOf(i) + " " + bucketCount);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", getCount(),
+                getMeanNanos() / 1e6, getPercentileNanos(0.5) / 1e6, getPercentileNanos(0.99) / 1e6,
+                getMaxNanos() / 1e6);
+    }
+}
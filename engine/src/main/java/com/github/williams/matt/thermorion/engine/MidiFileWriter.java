@@ -0,0 +1,178 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Captures a performance as a Standard MIDI File: format 0, one track, piano on channel 1.
+ *
+ * Two steps make a quarter note, so the file's tempo is the sequencer's.  Each note sounds for
+ * one step, and its pitch ratio maps onto the nearest semitone above or below {@link #ROOT_NOTE}.
+ *
+ * Writes go through a buffered stream as the notes arrive, so this belongs on a
+ * {@link NoteSinkThread} rather than the sequencer thread.  Write errors are held until
+ * {@link #close()} rather than thrown into the sink callbacks.
+ */
+public final class MidiFileWriter implements NoteSink {
+    /** The MIDI note the unshifted sample plays - middle C. */
+    public static final int ROOT_NOTE = 60;
+    public static final int TICKS_PER_QUARTER = 480;
+    private static final long NANOS_PER_QUARTER = 2 * Sequencer.STEP_NANOS;
+    private static final long NOTE_NANOS = Sequencer.STEP_NANOS;
+    private static final int VELOCITY = 100;
+    private static final int TRACK_LENGTH_OFFSET = 18;
+
+    private final File file;
+    private final OutputStream out;
+    private long trackBytes = 0;
+    private long originNanos = -1;
+    private long stepOnsetNanos;
+    private long lastTick = 0;
+    // Notes started in the current step, to be ended at the next one.
+    private final int[] sounding = new int[128];
+    private int soundingCount = 0;
+    private long noteCount = 0;
+    private IOException failure = null;
+
+    /**
+     * Creates (or truncates) the file and writes the file header.
+     */
+    public MidiFileWriter(File file) throws IOException {
+        this.file = file;
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        out.write(new byte[] {'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 0, 0, 1});
+        writeShort(TICKS_PER_QUARTER);
+        out.write(new byte[] {'M', 'T', 'r', 'k', 0, 0, 0, 0});
+        long microsPerQuarter = NANOS_PER_QUARTER / 1000;
+        writeEvent(0, 0xFF, 0x51, 3);
+        writeTrackByte((int)(microsPerQuarter >> 16));
+        writeTrackByte((int)(microsPerQuarter >> 8));
+        writeTrackByte((int)microsPerQuarter);
+        // Program change to acoustic grand piano.
+        writeEvent(0, 0xC0, 0);
+    }
+
+    @Override
+    public void onStep(int timeslot, long onsetNanos) {
+        if (originNanos < 0) {
+            originNanos = onsetNanos;
+        }
+        endNotes(Math.min(onsetNanos, stepOnsetNanos + NOTE_NANOS));
+        stepOnsetNanos = onsetNanos;
+    }
+
+    @Override
+    public void noteOn(int degree, float pitch) {
+        if (originNanos < 0) {
+            return; // Only whole steps are captured.
+        }
+        int note = ROOT_NOTE + Math.round((float)(12 * Math.log(pitch) / Math.log(2)));
+        note = Math.max(0, Math.min(127, note));
+        for (int i = 0; i < soundingCount; i++) {
+            if (sounding[i] == note) {
+                return;
+            }
+        }
+        sounding[soundingCount++] = note;
+        noteCount++;
+        writeEvent(toTick(stepOnsetNanos), 0x90, note, VELOCITY);
+    }
+
+    private void endNotes(long offNanos) {
+        if (soundingCount == 0) {
+            return;
+        }
+        long tick = toTick(offNanos);
+        for (int i = 0; i < soundingCount; i++) {
+            // Note on with velocity 0 is a note off.
+            writeEvent(tick, 0x90, sounding[i], 0);
+        }
+        soundingCount = 0;
+    }
+
+    private long toTick(long nanos) {
+        return (nanos - originNanos) * TICKS_PER_QUARTER / NANOS_PER_QUARTER;
+    }
+
+    /**
+     * Ends any sounding notes, completes the track and closes the file.
+     *
+     * @throws IOException if any write failed
+     */
+    public void close() throws IOException {
+        endNotes(stepOnsetNanos + NOTE_NANOS);
+        writeEvent(lastTick, 0xFF, 0x2F, 0);
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        RandomAccessFile patch = new RandomAccessFile(file, "rw");
+        try {
+            patch.seek(TRACK_LENGTH_OFFSET);
+            patch.writeInt((int)trackBytes);
+        } finally {
+            patch.close();
+        }
+    }
+
+    public long getNoteCount() {
+        return noteCount;
+    }
+
+    @Override
+    public String toString() {
+        return file + ": " + noteCount + " notes";
+    }
+
+    private void writeEvent(long tick, int status, int data1) {
+        writeDelta(tick);
+        writeTrackByte(status);
+        writeTrackByte(data1);
+    }
+
+    private void writeEvent(long tick, int status, int data1, int data2) {
+        writeEvent(tick, status, data1);
+        writeTrackByte(data2);
+    }
+
+    private void writeDelta(long tick) {
+        long delta = Math.max(0, tick - lastTick);
+        lastTick = Math.max(lastTick, tick);
+        // Variable-length quantity, most significant 7 bits first.
+        int shift = 0;
+        while ((shift < 28) && ((delta >> (shift + 7)) != 0)) {
+            shift += 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            writeTrackByte((int)(((delta >> shift) & 0x7F) | 0x80));
+        }
+        writeTrackByte((int)(delta & 0x7F));
+    }
+
+    private void writeTrackByte(int b) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            out.write(b);
+            trackBytes++;
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Publishes the {@link Sequencer}'s notes to any number of consumers - players, recorders - each
+ * of which reads them at its own pace on its own thread.
+ *
+ * Every subscriber gets its own preallocated {@link NoteEventQueue}, and publishing an event is a
+ * few array stores per subscriber, so the sequencer's step costs the same however slow a
+ * subscriber is.  One that falls a whole queue behind loses its own newest events (see
+ * {@link NoteEventQueue#getDroppedCount()}) without affecting the others.  Waiting subscribers
+ * are only woken by {@link #flush()}, once the whole step is out, so a woken subscriber never
+ * competes with the rest of the step for a core.
+ *
+ * Only the sequencer thread may publish; subscribers may come and go at any time.
+ */
+public final class NoteEventBus implements NoteSink {
+    private volatile NoteEventQueue[] queues = new NoteEventQueue[0];
+    private long stepOnsetNanos;
+
+    /**
+     * @param capacity events the subscriber may fall behind by before new ones are dropped
+     * @return the subscriber's queue, which receives every event from now on
+     */
+    public synchronized NoteEventQueue subscribe(int capacity) {
+        NoteEventQueue queue = new NoteEventQueue(capacity);
+        NoteEventQueue[] newQueues = new NoteEventQueue[queues.length + 1];
+        System.arraycopy(queues, 0, newQueues, 0, queues.length);
+        newQueues[queues.length] = queue;
+        queues = newQueues;
+        return queue;
+    }
+
+    /**
+     * Stops publishing to a queue.  An event already being published may still arrive.
+     */
+    public synchronized void unsubscribe(NoteEventQueue queue) {
+        NoteEventQueue[] oldQueues = queues;
+        for (int i = 0; i < oldQueues.length; i++) {
+            if (oldQueues[i] == queue) {
+                NoteEventQueue[] newQueues = new NoteEventQueue[oldQueues.length - 1];
+                System.arraycopy(oldQueues, 0, newQueues, 0, i);
+                System.arraycopy(oldQueues, i + 1, newQueues, i, oldQueues.length - i - 1);
+                queues = newQueues;
+                return;
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return queues.length;
+    }
+
+    /**
+     * Wakes any subscriber waiting on events published since the last flush.  Cheap enough to
+     * call after every {@link Sequencer#advance}, stepped or not.
+     */
+    public void flush() {
+        for (NoteEventQueue queue : queues) {
+            queue.wake();
+        }
+    }
+
+    @Override
+    public void onStep(int timeslot, long onsetNanos) {
+        stepOnsetNanos = onsetNanos;
+        for (NoteEventQueue queue : queues) {
+            queue.offerStep(timeslot, onsetNanos);
+        }
+    }
+
+    @Override
+    public void noteOn(int degree, float pitch) {
+        long onsetNanos = stepOnsetNanos;
+        for (NoteEventQueue queue : queues) {
+            queue.offer(degree, pitch, onsetNanos);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue of timestamped notes and step markers, stored in
+ * preallocated primitive arrays so that neither side allocates or locks.
+ *
+ * The producer never blocks: if the consumer falls a whole queue behind, new events are dropped
+ * and counted.  A consumer with nothing else to do can {@link #await()} events, which the producer
+ * hands over with {@link #wake()} once it has queued a batch.
+ */
+public final class NoteEventQueue {
+    private final int mask;
+    // Degree of a note, or -1 - timeslot for a step marker.
+    private final int[] voices;
+    private final float[] pitches;
+    private final long[] onsets;
+    private final AtomicLong head = new AtomicLong(); // next slot to read
+    private final AtomicLong tail = new AtomicLong(); // next slot to write
+    private volatile Thread waiter = null;
+    private volatile long dropped;
+
+    private int voice;
+    private float pitch;
+    private long onsetNanos;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public NoteEventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        voices = new int[size];
+        pitches = new float[size];
+        onsets = new long[size];
+    }
+
+    /**
+     * Producer side: queues a note.
+     *
+     * @param degree the note's {@link Scale} degree
+     * @param onsetNanos the System.nanoTime() at which the note's step was due
+     * @return false if the queue was full and the note was dropped
+     */
+    public boolean offer(int degree, float pitch, long onsetNanos) {
+        return put(degree, pitch, onsetNanos);
+    }
+
+    /**
+     * Producer side: marks the start of a step, ahead of its notes.
+     *
+     * @return false if the queue was full and the marker was dropped
+     */
+    public boolean offerStep(int timeslot, long onsetNanos) {
+        return put(-1 - timeslot, 0, onsetNanos);
+    }
+
+    private boolean put(int voice, float pitch, long onsetNanos) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int index = (int)(t & mask);
+        voices[index] = voice;
+        pitches[index] = pitch;
+        onsets[index] = onsetNanos;
+        // A full volatile write rather than lazySet, so that either the consumer sees the event
+        // before parking or wake() sees it waiting.
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Producer side: unparks the consumer if it is waiting for events that have been queued.
+     */
+    public void wake() {
+        Thread thread = waiter;
+        if ((thread != null) && (head.get() != tail.get())) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Consumer side: moves the oldest event into {@link #getVoice()} and friends.
+     *
+     * @return false if the queue was empty
+     */
+    public boolean poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return false;
+        }
+        int index = (int)(h & mask);
+        voice = voices[index];
+        pitch = pitches[index];
+        onsetNanos = onsets[index];
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: parks until queued events are handed over by {@link #wake()}, or until the
+     * calling thread is unparked or interrupted.  Returns at once if the queue is not empty.
+     */
+    public void await() {
+        waiter = Thread.currentThread();
+        if (head.get() == tail.get()) {
+            LockSupport.park(this);
+        }
+        waiter = null;
+    }
+
+    /**
+     * @return whether the last event polled was a step marker rather than a note
+     */
+    public boolean isStep() {
+        return voice < 0;
+    }
+
+    public int getTimeslot() {
+        return -1 - voice;
+    }
+
+    /**
+     * @return the last note's {@link Scale} degree
+     */
+    public int getVoice() {
+        return voice;
+    }
+
+    public float getPitch() {
+        return pitch;
+    }
+
+    public long getOnsetNanos() {
+        return onsetNanos;
+    }
+
+    /**
+     * Consumer side: hands the last event polled to a sink.
+     */
+    public void dispatch(NoteSink sink) {
+        if (voice < 0) {
+            sink.onStep(-1 - voice, onsetNanos);
+        } else {
+            sink.noteOn(voice, pitch);
+        }
+    }
+
+    /**
+     * @return events dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+}
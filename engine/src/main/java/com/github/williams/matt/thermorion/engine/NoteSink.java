@@ -0,0 +1,21 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Receives the notes played by a {@link Sequencer}.
+ */
+public interface NoteSink {
+    /**
+     * Called at the start of every timeslot, before any of its notes.
+     *
+     * @param onsetNanos the System.nanoTime() at which the timeslot was due to start - sinks that
+     *                   schedule ahead should place the step's notes here rather than at "now"
+     */
+    void onStep(int timeslot, long onsetNanos);
+
+    /**
+     * @param degree the note's {@link Scale} degree, which is also its index in a {@link SampleBank}
+     *               rendered from {@link Scale#getPitches()}
+     * @param pitch playback rate relative to the unshifted sample
+     */
+    void noteOn(int degree, float pitch);
+}
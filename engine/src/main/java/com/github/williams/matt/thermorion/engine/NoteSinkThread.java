@@ -0,0 +1,42 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains a {@link NoteEventQueue} into a {@link NoteSink} on a thread of its own, parking while
+ * the queue is empty.  Whatever the sink does - binder calls, file I/O - happens here rather than
+ * on the sequencer thread.
+ */
+public class NoteSinkThread extends Thread {
+    private final NoteEventQueue queue;
+    private final NoteSink sink;
+    private volatile boolean terminating = false;
+
+    public NoteSinkThread(String name, NoteEventQueue queue, NoteSink sink) {
+        super(name);
+        this.queue = queue;
+        this.sink = sink;
+    }
+
+    /**
+     * Stops the thread once it has passed on everything already queued.  Unsubscribe the queue
+     * first, or a busy producer can keep it going.
+     */
+    public void terminate() {
+        terminating = true;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (queue.poll()) {
+                queue.dispatch(sink);
+            } else if (terminating) {
+                break;
+            } else {
+                queue.await();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base for frame sources that produce frames on their own thread, sleeping until each frame's
+ * absolute deadline in the same way as {@link SequencerThread}.
+ */
+abstract class PacedFrameSource implements FrameSource {
+    private final String name;
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+
+    PacedFrameSource(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) {
+        if (thread != null) {
+            throw new IllegalStateException(name + " already started");
+        }
+        running = true;
+        thread = new Thread(name) {
+            @Override
+            public void run() {
+                produce(listener);
+            }
+        };
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread producer = thread;
+        if (producer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(producer);
+        if (producer != Thread.currentThread()) {
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    protected boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Sleeps until the given System.nanoTime().
+     *
+     * @return false if the source was stopped meanwhile
+     */
+    protected boolean sleepUntil(long deadline) {
+        long now;
+        while (running && ((now = System.nanoTime()) < deadline)) {
+            LockSupport.parkNanos(this, deadline - now);
+        }
+        return running;
+    }
+
+    /**
+     * Delivers frames until {@link #isRunning()} goes false or the source runs dry.  Called on the
+     * source's own thread.
+     */
+    protected abstract void produce(Listener listener);
+}
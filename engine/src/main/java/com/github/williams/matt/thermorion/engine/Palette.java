@@ -0,0 +1,47 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * False-colour palettes for displaying radiometric frames, each a lookup table of
+ * {@link #SIZE} opaque ARGB colours from coldest to hottest.
+ */
+public enum Palette {
+    IRON(0x000000, 0x20008c, 0x8c0096, 0xcc2266, 0xff8c00, 0xffdc00, 0xffffff),
+    RAINBOW(0x000080, 0x0000ff, 0x00ffff, 0x00ff00, 0xffff00, 0xff0000, 0xff00ff),
+    GRAYSCALE(0x000000, 0xffffff);
+
+    public static final int SIZE = 256;
+
+    private final int[] colors = new int[SIZE];
+
+    Palette(int... stops) {
+        // Interpolate linearly between evenly spaced RGB stops.
+        int segments = stops.length - 1;
+        for (int i = 0; i < SIZE; i++) {
+            float position = i * segments / (float)(SIZE - 1);
+            int segment = Math.min((int)position, segments - 1);
+            float fraction = position - segment;
+            int from = stops[segment];
+            int to = stops[segment + 1];
+            colors[i] = 0xff000000 |
+                    (lerp((from >> 16) & 0xff, (to >> 16) & 0xff, fraction) << 16) |
+                    (lerp((from >> 8) & 0xff, (to >> 8) & 0xff, fraction) << 8) |
+                    lerp(from & 0xff, to & 0xff, fraction);
+        }
+    }
+
+    private static int lerp(int from, int to, float fraction) {
+        return Math.round(from + (to - from) * fraction);
+    }
+
+    /**
+     * @return the palette's colours - shared, so must not be modified
+     */
+    int[] getColors() {
+        return colors;
+    }
+
+    public Palette next() {
+        Palette[] palettes = values();
+        return palettes[(ordinal() + 1) % palettes.length];
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reduces a radiometric frame to one mean temperature per grid panel.
+ *
+ * A summed-area table is built in one pass over the sensor pixels, after which each panel is an
+ * O(1) lookup, so the per-frame cost depends only on sensor resolution.  Every buffer is
+ * allocated up front for one (geometry, sensor resolution) pair.
+ *
+ * Given a ForkJoinPool, the pixel pass is instead split into one stripe of rows per worker.  A
+ * summed-area table can't be built in stripes, since each row depends on the one above, so each
+ * stripe sums every row across each panel column on its own; a panel is then the sum of its
+ * rows' column sums.  The results are identical to the serial path.  The tasks are allocated with
+ * the reducer and reinitialized for each frame.  The calling thread sums the first stripe itself
+ * and then parks until a countdown of the others reaches zero, rather than joining them, since a
+ * blocking join from outside the pool can allocate.
+ */
+public final class PanelReducer {
+    private final GridGeometry geometry;
+    private final int sensorWidth;
+    private final int sensorHeight;
+    // Columns share their x range and rows share their y range.  Inclusive bounds.
+    private final int[] panelStartX;
+    private final int[] panelEndX;
+    private final int[] panelStartY;
+    private final int[] panelEndY;
+    private final long[] summedAreaTable;
+    private final short[] panelValues;
+    private long total;
+    private short minimum;
+    private short maximum;
+    private short pixelMinimum;
+    private short pixelMaximum;
+    // Parallel path only: each sensor row's sum across each panel column, [y * numPanelsWide + x].
+    private final ForkJoinPool pool;
+    private final int[] rowSums;
+    private final StripeTask[] stripes;
+    private final AtomicInteger pendingStripes = new AtomicInteger();
+    private volatile Thread waiter = null;
+    private volatile RuntimeException stripeFailure = null;
+    private short[] stripePixels;
+
+    public PanelReducer(GridGeometry geometry, int sensorWidth, int sensorHeight) {
+        this(geometry, sensorWidth, sensorHeight, null);
+    }
+
+    /**
+     * @param pool the workers to reduce frames on, or null to reduce them on the calling thread
+     */
+    public PanelReducer(GridGeometry geometry, int sensorWidth, int sensorHeight, ForkJoinPool pool) {
+        this.geometry = geometry;
+        this.sensorWidth = sensorWidth;
+        this.sensorHeight = sensorHeight;
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        panelStartX = new int[numPanelsWide];
+        panelEndX = new int[numPanelsWide];
+        panelStartY = new int[numPanelsHigh];
+        panelEndY = new int[numPanelsHigh];
+        this.pool = pool;
+        if (pool == null) {
+            summedAreaTable = new long[(sensorWidth + 1) * (sensorHeight + 1)];
+            rowSums = null;
+            stripes = null;
+        } else {
+            summedAreaTable = null;
+            rowSums = new int[sensorHeight * numPanelsWide];
+            int numStripes = Math.max(1, Math.min(sensorHeight, pool.getParallelism()));
+            stripes = new StripeTask[numStripes];
+            for (int i = 0; i < numStripes; i++) {
+                stripes[i] = new StripeTask(sensorHeight * i / numStripes, sensorHeight * (i + 1) / numStripes);
+            }
+        }
+        panelValues = new short[geometry.getNumPanels()];
+
+        int panelSize = geometry.getPanelSize();
+        float scaleX = sensorWidth * 1.0f / geometry.getWidth();
+        float scaleY = sensorHeight * 1.0f / geometry.getHeight();
+        // Dense grids on small views can leave panels narrower than the inset, whose start then
+        // lands on or past their end - or past the sensor's edge.  Each samples at least one pixel.
+        for (int x = 0; x < numPanelsWide; x++) {
+            panelStartX[x] = Math.min(sensorWidth - 1, Math.max(0, (int)((geometry.getPanelLeft(x) + GridGeometry.PANEL_INSET) * scaleX)));
+            panelEndX[x] = Math.max(panelStartX[x], Math.min(sensorWidth - 1, (int)((geometry.getPanelLeft(x) + panelSize - GridGeometry.PANEL_INSET) * scaleX)));
+        }
+        for (int y = 0; y < numPanelsHigh; y++) {
+            panelStartY[y] = Math.min(sensorHeight - 1, Math.max(0, (int)((geometry.getPanelTop(y) + GridGeometry.PANEL_INSET) * scaleY)));
+            panelEndY[y] = Math.max(panelStartY[y], Math.min(sensorHeight - 1, (int)((geometry.getPanelTop(y) + panelSize - GridGeometry.PANEL_INSET) * scaleY)));
+        }
+    }
+
+    public boolean matches(GridGeometry geometry, int sensorWidth, int sensorHeight) {
+        return (this.geometry == geometry) && (this.sensorWidth == sensorWidth) && (this.sensorHeight == sensorHeight);
+    }
+
+    public GridGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Computes the mean of every panel into {@link #getPanelValues()}, and the range of the whole
+     * frame along the way.
+     */
+    public void reduce(RadiometricFrame frame) {
+        if (pool == null) {
+            buildSummedAreaTable(frame.getPixels());
+        } else {
+            sumRowsInParallel(frame.getPixels());
+        }
+
+        int stride = sensorWidth + 1;
+        long[] sat = summedAreaTable;
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        long thermalTotal = 0;
+        short thermalMinimum = Short.MAX_VALUE;
+        short thermalMaximum = Short.MIN_VALUE;
+        for (int y = 0; y < numPanelsHigh; y++) {
+            int startY = panelStartY[y];
+            int endY = panelEndY[y];
+            int topRow = startY * stride;
+            int bottomRow = (endY + 1) * stride;
+            for (int x = 0; x < numPanelsWide; x++) {
+                int startX = panelStartX[x];
+                int endX = panelEndX[x];
+                long accumulator;
+                if (sat != null) {
+                    accumulator = sat[bottomRow + endX + 1] - sat[topRow + endX + 1] - sat[bottomRow + startX] + sat[topRow + startX];
+                } else {
+                    accumulator = 0;
+                    for (int row = startY; row <= endY; row++) {
+                        accumulator += rowSums[row * numPanelsWide + x];
+                    }
+                }
+                short result = (short)(accumulator / (endX - startX + 1) / (endY - startY + 1));
+                panelValues[x + numPanelsWide * y] = result;
+                thermalTotal += result;
+                thermalMinimum = (short)Math.min(thermalMinimum, result);
+                thermalMaximum = (short)Math.max(thermalMaximum, result);
+            }
+        }
+        total = thermalTotal;
+        minimum = thermalMinimum;
+        maximum = thermalMaximum;
+    }
+
+    private void buildSummedAreaTable(short[] pix) {
+        int stride = sensorWidth + 1;
+        long[] sat = summedAreaTable;
+        short pixMinimum = Short.MAX_VALUE;
+        short pixMaximum = Short.MIN_VALUE;
+        for (int y = 0; y < sensorHeight; y++) {
+            long rowTotal = 0;
+            int pixIndex = y * sensorWidth;
+            int satIndex = (y + 1) * stride + 1;
+            for (int x = 0; x < sensorWidth; x++) {
+                short value = pix[pixIndex + x];
+                rowTotal += value;
+                sat[satIndex + x] = sat[satIndex + x - stride] + rowTotal;
+                if (value < pixMinimum) {
+                    pixMinimum = value;
+                }
+                if (value > pixMaximum) {
+                    pixMaximum = value;
+                }
+            }
+        }
+        pixelMinimum = pixMinimum;
+        pixelMaximum = pixMaximum;
+    }
+
+    private void sumRowsInParallel(short[] pix) {
+        stripePixels = pix;
+        waiter = Thread.currentThread();
+        pendingStripes.set(stripes.length - 1);
+        for (int i = 1; i < stripes.length; i++) {
+            stripes[i].reinitialize();
+            pool.execute(stripes[i]);
+        }
+        stripes[0].sumRows();
+        while (pendingStripes.get() > 0) {
+            LockSupport.park(this);
+        }
+        // A worker counts down just before the pool marks its task done, and a task still being
+        // marked can't be reinitialized for the next frame.  That's a few instructions at most,
+        // so yield rather than join, which can allocate.
+        for (int i = 1; i < stripes.length; i++) {
+            while (!stripes[i].isDone()) {
+                Thread.yield();
+            }
+        }
+        waiter = null;
+        stripePixels = null;
+        RuntimeException failure = stripeFailure;
+        if (failure != null) {
+            stripeFailure = null;
+            throw failure;
+        }
+        short pixMinimum = Short.MAX_VALUE;
+        short pixMaximum = Short.MIN_VALUE;
+        for (StripeTask stripe : stripes) {
+            pixMinimum = (short)Math.min(pixMinimum, stripe.minimum);
+            pixMaximum = (short)Math.max(pixMaximum, stripe.maximum);
+        }
+        pixelMinimum = pixMinimum;
+        pixelMaximum = pixMaximum;
+    }
+
+    private final class StripeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int startRow;
+        private final int endRow;
+        // Running totals along the current row, so each panel column is one subtraction.
+        private final int[] prefix = new int[sensorWidth + 1];
+        short minimum;
+        short maximum;
+
+        StripeTask(int startRow, int endRow) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                sumRows();
+            } catch (RuntimeException e) {
+                stripeFailure = e;
+            } finally {
+                if (pendingStripes.decrementAndGet() == 0) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+
+        void sumRows() {
+            short[] pix = stripePixels;
+            int[] rowTotals = prefix;
+            int numPanelsWide = panelStartX.length;
+            short pixMinimum = Short.MAX_VALUE;
+            short pixMaximum = Short.MIN_VALUE;
+            for (int y = startRow; y < endRow; y++) {
+                int pixIndex = y * sensorWidth;
+                int rowTotal = 0;
+                for (int x = 0; x < sensorWidth; x++) {
+                    short value = pix[pixIndex + x];
+                    rowTotal += value;
+                    rowTotals[x + 1] = rowTotal;
+                    if (value < pixMinimum) {
+                        pixMinimum = value;
+                    }
+                    if (value > pixMaximum) {
+                        pixMaximum = value;
+                    }
+                }
+                int sumIndex = y * numPanelsWide;
+                for (int x = 0; x < numPanelsWide; x++) {
+                    rowSums[sumIndex + x] = rowTotals[panelEndX[x] + 1] - rowTotals[panelStartX[x]];
+                }
+            }
+            minimum = pixMinimum;
+            maximum = pixMaximum;
+        }
+    }
+
+    /**
+     * @return the per-panel means from the last {@link #reduce}, indexed x + y * numPanelsWide
+     */
+    public short[] getPanelValues() {
+        return panelValues;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public short getAverage() {
+        return (short)(total / panelValues.length);
+    }
+
+    public short getMinimum() {
+        return minimum;
+    }
+
+    public short getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @return the coldest sensor pixel in the last frame, as opposed to the coldest panel
+     */
+    public short getPixelMinimum() {
+        return pixelMinimum;
+    }
+
+    public short getPixelMaximum() {
+        return pixelMaximum;
+    }
+}
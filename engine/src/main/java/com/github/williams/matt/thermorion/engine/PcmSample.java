@@ -0,0 +1,26 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * A mono, 16-bit PCM sound.
+ */
+public final class PcmSample {
+    private final short[] data;
+    private final int sampleRate;
+
+    public PcmSample(short[] data, int sampleRate) {
+        this.data = data;
+        this.sampleRate = sampleRate;
+    }
+
+    public short[] getData() {
+        return data;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getLength() {
+        return data.length;
+    }
+}
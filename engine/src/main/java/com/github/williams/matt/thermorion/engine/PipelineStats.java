@@ -0,0 +1,117 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * A {@link LatencyHistogram} for each stage between a frame arriving from the camera and its
+ * notes sounding and grid being drawn.  Each stage is only recorded by the one thread that runs
+ * it.
+ */
+public final class PipelineStats {
+    public enum Stage {
+        /** The camera SDK rendering a frame into a radiometric image. */
+        CAPTURE,
+        /** {@link ThermalEngine#processFrame} reducing a frame to a published tone grid. */
+        PROCESS,
+        /** Copying a frame's display image into a bitmap. */
+        DISPLAY,
+        /** How late each sequencer step started relative to its deadline. */
+        ONSET,
+        /** A sequencer step handing its notes to the sink. */
+        STEP,
+        /** Drawing the grid and playhead over the display image. */
+        DRAW
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    // Written only by the frame processing thread.
+    private volatile long frameCount;
+    private volatile long skippedCount;
+
+    public PipelineStats() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * @param skipped whether the frame was skipped as unchanged, rather than processed
+     */
+    void recordFrame(boolean skipped) {
+        if (skipped) {
+            skippedCount++;
+        }
+        frameCount++;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return the fraction of frames skipped as unchanged
+     */
+    public double getSkipRate() {
+        long frames = frameCount;
+        return (frames > 0) ? skippedCount / (double)frames : 0;
+    }
+
+    /**
+     * @return the frame and skip counts, then one line per stage that has recorded anything, for
+     *         an on-screen display
+     */
+    public String summarize() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("frames %d  skipped %.0f%%", getFrameCount(), getSkipRate() * 100));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = get(stage);
+            if (histogram.getCount() > 0) {
+                builder.append('\n');
+                builder.append(String.format("%-8s p50 %6.2f  p99 %6.2f  max %6.2f ms", stage,
+                        histogram.getPercentileNanos(0.5) / 1e6, histogram.getPercentileNanos(0.99) / 1e6,
+                        histogram.getMaxNanos() / 1e6));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes a summary line and then the raw buckets of every stage to file, replacing it.
+     */
+    public void dump(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("# frames " + getFrameCount() + " skipped " + getSkippedCount());
+            for (Stage stage : Stage.values()) {
+                writer.println("# " + stage + " " + get(stage));
+                get(stage).writeBuckets(writer);
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("frames=").append(getFrameCount()).append(" skipped=").append(getSkippedCount());
+        for (Stage stage : Stage.values()) {
+            builder.append("; ").append(stage).append(' ').append(get(stage));
+        }
+        return builder.toString();
+    }
+}
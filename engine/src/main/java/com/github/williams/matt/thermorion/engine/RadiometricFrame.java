@@ -0,0 +1,52 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * One radiometric frame from a thermal sensor: a row-major array of pixel temperatures in
+ * hundredths of a Kelvin, as returned by the FLIR SDK's thermalPixelData().
+ *
+ * Frames are mutable so that a single instance can be re-pointed at each incoming pixel array
+ * without allocating.
+ */
+public final class RadiometricFrame {
+    private short[] pixels;
+    private int width;
+    private int height;
+    private long timestampNanos;
+
+    public RadiometricFrame() {
+    }
+
+    public RadiometricFrame(int width, int height) {
+        set(new short[width * height], width, height, 0);
+    }
+
+    public RadiometricFrame set(short[] pixels, int width, int height, long timestampNanos) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " pixels, got " + pixels.length);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.timestampNanos = timestampNanos;
+        return this;
+    }
+
+    public short[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the System.nanoTime() at which the frame arrived
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Plays back a session written by {@link SessionRecorder}, either at the pace it was recorded or
+ * as fast as the listener will take frames.
+ *
+ * Frames are re-stamped with the System.nanoTime() at which they are delivered, so downstream
+ * timing behaves as it would with a live camera.
+ */
+public final class ReplayFrameSource extends PacedFrameSource {
+    private final File file;
+    private final boolean realTime;
+    private final boolean loop;
+    private final RadiometricFrame frame = new RadiometricFrame();
+    private volatile long delivered = 0;
+    private volatile IOException failure = null;
+
+    /**
+     * @param realTime whether to keep the recorded gaps between frames, rather than going flat out
+     * @param loop     whether to start again from the first frame at the end of the recording
+     */
+    public ReplayFrameSource(File file, boolean realTime, boolean loop) {
+        super("ReplayFrameSource");
+        this.file = file;
+        this.realTime = realTime;
+        this.loop = loop;
+    }
+
+    /**
+     * @return how many frames have been delivered so far
+     */
+    public long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * @return the error that ended playback early, if any
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    protected void produce(Listener listener) {
+        SessionReader reader = null;
+        try {
+            reader = new SessionReader(file);
+            int frameCount = reader.getFrameCount();
+            if (frameCount == 0) {
+                return;
+            }
+            do {
+                long start = System.nanoTime();
+                long firstTimestamp = 0;
+                for (int i = 0; (i < frameCount) && isRunning(); i++) {
+                    reader.read(i, frame);
+                    if (i == 0) {
+                        firstTimestamp = frame.getTimestampNanos();
+                    }
+                    if (realTime && !sleepUntil(start + frame.getTimestampNanos() - firstTimestamp)) {
+                        break;
+                    }
+                    frame.set(frame.getPixels(), frame.getWidth(), frame.getHeight(), System.nanoTime());
+                    listener.onFrame(frame);
+                    delivered++;
+                }
+            } while (loop && isRunning());
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing was written, so nothing is lost.
+                }
+            }
+        }
+    }
+}
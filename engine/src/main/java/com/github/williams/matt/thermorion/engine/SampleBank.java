@@ -0,0 +1,59 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * A sample pre-rendered at every pitch the sequencer can ask for, at the output sample rate, so
+ * that playing a note is a straight copy with no per-note resampling.
+ */
+public final class SampleBank {
+    private final short[][] voices;
+    private final int sampleRate;
+
+    private SampleBank(short[][] voices, int sampleRate) {
+        this.voices = voices;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param pitches playback rate of each voice relative to the unshifted sample
+     */
+    public static SampleBank render(PcmSample sample, int outputRate, float[] pitches) {
+        short[][] voices = new short[pitches.length][];
+        for (int i = 0; i < pitches.length; i++) {
+            voices[i] = resample(sample, pitches[i] * sample.getSampleRate() / (float)outputRate);
+        }
+        return new SampleBank(voices, outputRate);
+    }
+
+    private static short[] resample(PcmSample sample, float increment) {
+        short[] in = sample.getData();
+        int lastIndex = in.length - 1;
+        short[] out = new short[Math.max(0, (int)(lastIndex / increment))];
+        for (int i = 0; i < out.length; i++) {
+            float pos = i * increment;
+            int index = (int)pos;
+            float frac = pos - index;
+            out[i] = (short)(in[index] + (in[index + 1] - in[index]) * frac);
+        }
+        return out;
+    }
+
+    public short[] getVoice(int index) {
+        return voices[index];
+    }
+
+    public int getNumVoices() {
+        return voices.length;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getFootprintBytes() {
+        long bytes = 0;
+        for (short[] voice : voices) {
+            bytes += voice.length * 2L;
+        }
+        return bytes;
+    }
+}
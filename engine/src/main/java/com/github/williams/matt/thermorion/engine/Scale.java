@@ -0,0 +1,62 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Pitch ratios for the notes of a major scale over several octaves, lowest first, precomputed so
+ * that every voice of the densest grid has a note.
+ *
+ * Degree {@link #ROOT_DEGREE} is the sample's own pitch.  Grids with up to {@link #ROOT_SPAN}
+ * voices play upwards from there, as the original 8x8 grid did; denser grids extend downwards as
+ * well as upwards so they stay within the table.
+ */
+public final class Scale {
+    private static final double SEMITONE = Math.pow(2.0, 1.0 / 12.0);
+    private static final int[] IONIAN = {0, 2, 4, 5, 7, 9, 11};
+    private static final int OCTAVES_BELOW_ROOT = 2;
+    /**
+     * Two octaves below the root to three above.  Rounding can give a 32-division grid a few more
+     * than 32 voices; any beyond the top of the table share its highest note.
+     */
+    public static final int NUM_DEGREES = 5 * IONIAN.length + 1;
+    public static final int ROOT_DEGREE = OCTAVES_BELOW_ROOT * IONIAN.length;
+    /** The most voices that start at the root: two octaves and a note. */
+    public static final int ROOT_SPAN = 2 * IONIAN.length + 1;
+
+    private static final float[] PITCHES = new float[NUM_DEGREES];
+    static {
+        for (int degree = 0; degree < NUM_DEGREES; degree++) {
+            int octave = degree / IONIAN.length - OCTAVES_BELOW_ROOT;
+            PITCHES[degree] = (float)Math.pow(SEMITONE, octave * 12 + IONIAN[degree % IONIAN.length]);
+        }
+    }
+
+    private Scale() {
+    }
+
+    public static int size() {
+        return NUM_DEGREES;
+    }
+
+    public static float getPitch(int degree) {
+        return PITCHES[degree];
+    }
+
+    /**
+     * @return every degree's pitch, e.g. to pre-render a {@link SampleBank} indexed by degree
+     */
+    public static float[] getPitches() {
+        return PITCHES.clone();
+    }
+
+    /**
+     * @return the degree that voice 0 of a grid with numVoices voices plays; voice n plays this
+     *         plus n, up to the top of the table
+     */
+    public static int getLowestDegree(int numVoices) {
+        int lowest = ROOT_DEGREE - Math.max(0, numVoices - ROOT_SPAN) / 2;
+        return Math.max(0, Math.min(lowest, NUM_DEGREES - numVoices));
+    }
+
+    public static int getDegree(int lowestDegree, int voice) {
+        return Math.min(NUM_DEGREES - 1, lowestDegree + voice);
+    }
+}
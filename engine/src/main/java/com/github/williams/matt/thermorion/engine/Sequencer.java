@@ -0,0 +1,147 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sweeps a playhead across a {@link ToneGrid}, one timeslot every {@link #STEP_MILLIS}, and plays
+ * the lit panels under it.
+ *
+ * Step n is due at exactly startTime + n * STEP_NANOS, so timing never drifts however late any
+ * individual step runs.  {@link #advance} says when the next step is due, or {@link #IDLE} when
+ * the grid is dark and there is nothing to wait for; {@link #wake()} ends an idle sleep.
+ */
+public final class Sequencer {
+    public static final int STEP_MILLIS = 250;
+    public static final long STEP_NANOS = STEP_MILLIS * 1000000L;
+    public static final long IDLE = Long.MAX_VALUE;
+
+    private final LatencyHistogram onsetLatency;
+    private final LatencyHistogram stepLatency;
+    private ToneGrid toneGrid;
+    private long startTime;
+    private long nextStep;
+    private int lowestDegree = Scale.ROOT_DEGREE;
+    private volatile long animatingBits = 0;
+    private volatile int timeslot = -1;
+    private volatile boolean idle = true;
+    private volatile Thread sleeper = null;
+
+    public Sequencer() {
+        this(new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    /**
+     * @param onsetLatency records how late each step starts
+     * @param stepLatency records how long each step takes to hand its notes to the sink
+     */
+    public Sequencer(LatencyHistogram onsetLatency, LatencyHistogram stepLatency) {
+        this.onsetLatency = onsetLatency;
+        this.stepLatency = stepLatency;
+    }
+
+    /**
+     * @param now System.nanoTime() at which the sequence starts
+     */
+    public synchronized void reset(ToneGrid toneGrid, long now) {
+        this.toneGrid = toneGrid;
+        lowestDegree = Scale.getLowestDegree(toneGrid.getGeometry().getNumVoices());
+        animatingBits = 0;
+        startTime = now;
+        nextStep = 0;
+        timeslot = -1;
+        LockSupport.unpark(sleeper);
+    }
+
+    /**
+     * Plays the step that is due, if any.
+     *
+     * @param now the current System.nanoTime()
+     * @return the System.nanoTime() at which the next step is due, or {@link #IDLE}
+     */
+    public synchronized long advance(long now, NoteSink sink) {
+        sleeper = Thread.currentThread();
+        if ((toneGrid == null) || toneGrid.getGeometry().isEmpty() || (now < startTime)) {
+            idle = true;
+            return IDLE;
+        }
+        long step = (now - startTime) / STEP_NANOS;
+        if (step >= nextStep) {
+            // Missed steps are skipped rather than played late; coming out of an idle sleep we
+            // are part-way through a step, so we just wait for the next boundary.
+            if (!idle) {
+                onsetLatency.record(now - (startTime + step * STEP_NANOS));
+                long playStart = System.nanoTime();
+                playStep((int)(step % toneGrid.getGeometry().getNumTimeslots()), startTime + step * STEP_NANOS, sink);
+                stepLatency.record(System.nanoTime() - playStart);
+            }
+            nextStep = step + 1;
+        }
+        if (toneGrid.getLitCount() == 0) {
+            idle = true;
+            // A frame that lit the grid before idle was set will have skipped its wake(), so look
+            // again now that it is: either this sees that frame's tones or that frame sees idle.
+            if (toneGrid.getLitCount() == 0) {
+                return IDLE;
+            }
+        }
+        idle = false;
+        return startTime + nextStep * STEP_NANOS;
+    }
+
+    private void playStep(int newTimeslot, long onsetNanos, NoteSink sink) {
+        sink.onStep(newTimeslot, onsetNanos);
+        long bits = toneGrid.getTimeslots()[newTimeslot];
+        animatingBits = bits;
+        while (bits != 0) {
+            int voice = Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            int degree = Scale.getDegree(lowestDegree, voice);
+            sink.noteOn(degree, Scale.getPitch(degree));
+        }
+        // Published last, so a reader that sees the new timeslot also sees its animating voices.
+        timeslot = newTimeslot;
+    }
+
+    /**
+     * Ends an idle sleep, e.g. because the grid has lit up.  Cheap enough to call on every frame.
+     */
+    public void wake() {
+        if (idle) {
+            LockSupport.unpark(sleeper);
+        }
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * @param now the current System.nanoTime()
+     * @return how far the playhead is through its sweep, in milliseconds
+     */
+    public synchronized long getPlayheadMillis(long now) {
+        if ((toneGrid == null) || toneGrid.getGeometry().isEmpty() || (now < startTime)) {
+            return 0;
+        }
+        long sweepNanos = STEP_NANOS * toneGrid.getGeometry().getNumTimeslots();
+        return ((now - startTime) % sweepNanos) / 1000000L;
+    }
+
+    /**
+     * @return whether the given voice started a note when the playhead entered the timeslot
+     */
+    public boolean isAnimating(int timeslot, int voice) {
+        if (timeslot != this.timeslot) {
+            return false;
+        }
+        return (voice < ToneGrid.MAX_VOICES) && (((animatingBits >>> voice) & 1) != 0);
+    }
+
+    public LatencyHistogram getOnsetLatency() {
+        return onsetLatency;
+    }
+
+    public LatencyHistogram getStepLatency() {
+        return stepLatency;
+    }
+}
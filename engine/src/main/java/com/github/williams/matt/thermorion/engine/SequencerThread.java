@@ -0,0 +1,39 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link Sequencer}, sleeping until each step's absolute deadline - or indefinitely while
+ * the grid is dark - rather than polling.  Notes go out on a {@link NoteEventBus}, flushed after
+ * each step.
+ */
+public class SequencerThread extends Thread {
+    private final Sequencer sequencer;
+    private final NoteEventBus bus;
+    private volatile boolean terminating = false;
+
+    public SequencerThread(Sequencer sequencer, NoteEventBus bus) {
+        super("SequencerThread");
+        this.sequencer = sequencer;
+        this.bus = bus;
+    }
+
+    public void terminate() {
+        terminating = true;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (!terminating) {
+            long now = System.nanoTime();
+            long deadline = sequencer.advance(now, bus);
+            bus.flush();
+            if (deadline == Sequencer.IDLE) {
+                LockSupport.park(this);
+            } else if (deadline > now) {
+                LockSupport.parkNanos(this, deadline - now);
+            }
+        }
+    }
+}
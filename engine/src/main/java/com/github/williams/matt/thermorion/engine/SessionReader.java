@@ -0,0 +1,165 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a session written by {@link SessionRecorder}.
+ *
+ * Both files are little-endian.  The data file is an 8-byte header (magic, version) followed by
+ * one record per frame: timestamp (long), sensor width, sensor height, tuning state, view width,
+ * view height, panels wide, panels high (ints), then width * height pixels (shorts).  The index
+ * file is an 8-byte header followed by the data file offset of each record (long), so seeking to
+ * any frame is one index read.
+ *
+ * A recorder that is killed rather than closed leaves both files zero-filled to the end of the
+ * region it last mapped, so the session is taken to end at the first index entry that isn't
+ * past the one before it or doesn't point at a whole record header.
+ *
+ * Buffers are reused between reads, so replaying a session allocates only when the sensor
+ * resolution grows.
+ */
+public final class SessionReader implements Closeable {
+    private static final int SCAN_ENTRIES = 8192;
+
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private final int frameCount;
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(SessionRecorder.INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(SessionRecorder.RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer pixelBuffer = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+    private int tuningState;
+    private int viewWidth;
+    private int viewHeight;
+    private int numPanelsWide;
+    private int numPanelsHigh;
+
+    public SessionReader(File dataFile) throws IOException {
+        dataChannel = new RandomAccessFile(dataFile, "r").getChannel();
+        indexChannel = new RandomAccessFile(SessionRecorder.getIndexFile(dataFile), "r").getChannel();
+        checkHeader(dataChannel, SessionRecorder.DATA_MAGIC);
+        checkHeader(indexChannel, SessionRecorder.INDEX_MAGIC);
+        frameCount = countFrames(indexChannel, dataChannel.size());
+    }
+
+    /**
+     * @return the number of index entries before any unwritten tail
+     */
+    private static int countFrames(FileChannel indexChannel, long dataBytes) throws IOException {
+        long entries = (indexChannel.size() - SessionRecorder.FILE_HEADER_BYTES) / SessionRecorder.INDEX_ENTRY_BYTES;
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_ENTRIES * SessionRecorder.INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        // The first record follows the data file header, and each one after it comes later.
+        long previous = SessionRecorder.FILE_HEADER_BYTES - 1;
+        int count = 0;
+        while (count < entries) {
+            int n = (int)Math.min(entries - count, SCAN_ENTRIES);
+            chunk.limit(n * SessionRecorder.INDEX_ENTRY_BYTES);
+            readFully(indexChannel, chunk, SessionRecorder.FILE_HEADER_BYTES + (long)count * SessionRecorder.INDEX_ENTRY_BYTES);
+            for (int i = 0; i < n; i++) {
+                long offset = chunk.getLong(i * SessionRecorder.INDEX_ENTRY_BYTES);
+                if ((offset <= previous) || (offset + SessionRecorder.RECORD_HEADER_BYTES > dataBytes)) {
+                    return count;
+                }
+                previous = offset;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void checkHeader(FileChannel channel, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SessionRecorder.FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if ((header.getInt(0) != magic) || (header.getInt(4) != SessionRecorder.VERSION)) {
+            throw new IOException("Not a version " + SessionRecorder.VERSION + " session file");
+        }
+    }
+
+    /**
+     * Fills buffer up to its limit from the given position, leaving it flipped ready to read.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Reads frame number index into frame, reusing its pixel array if it is large enough.  The
+     * rest of the record is then available from {@link #getTuningState()} and friends.
+     */
+    public void read(int index, RadiometricFrame frame) throws IOException {
+        if ((index < 0) || (index >= frameCount)) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+        readFully(indexChannel, entryBuffer, SessionRecorder.FILE_HEADER_BYTES + (long)index * SessionRecorder.INDEX_ENTRY_BYTES);
+        long offset = entryBuffer.getLong(0);
+
+        readFully(dataChannel, headerBuffer, offset);
+        ByteBuffer header = headerBuffer;
+        long timestampNanos = header.getLong(0);
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        tuningState = header.getInt(16);
+        viewWidth = header.getInt(20);
+        viewHeight = header.getInt(24);
+        numPanelsWide = header.getInt(28);
+        numPanelsHigh = header.getInt(32);
+
+        int pixelCount = width * height;
+        int pixelBytes = pixelCount * 2;
+        if (pixelBuffer.capacity() < pixelBytes) {
+            pixelBuffer = ByteBuffer.allocate(pixelBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        pixelBuffer.limit(pixelBytes);
+        readFully(dataChannel, pixelBuffer, offset + SessionRecorder.RECORD_HEADER_BYTES);
+
+        short[] pixels = frame.getPixels();
+        if ((pixels == null) || (pixels.length < pixelCount)) {
+            pixels = new short[pixelCount];
+        }
+        pixelBuffer.asShortBuffer().get(pixels, 0, pixelCount);
+        frame.set(pixels, width, height, timestampNanos);
+    }
+
+    public int getTuningState() {
+        return tuningState;
+    }
+
+    public int getViewWidth() {
+        return viewWidth;
+    }
+
+    public int getViewHeight() {
+        return viewHeight;
+    }
+
+    public int getNumPanelsWide() {
+        return numPanelsWide;
+    }
+
+    public int getNumPanelsHigh() {
+        return numPanelsHigh;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataChannel.close();
+        indexChannel.close();
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records a session's radiometric frames, with their timestamp, tuning state and grid layout, to
+ * an append-only file that {@link SessionReader} can seek into.
+ *
+ * The frame thread only copies each frame into a slot of a bounded ring; a writer thread drains
+ * the ring in batches into memory-mapped regions of the file.  If the writer falls a whole ring
+ * behind, frames are dropped and counted rather than holding up the frame path.
+ *
+ * Alongside the data file, an index file holds the offset of every frame record as a fixed-size
+ * entry, so frame n can be found in O(1).  See {@link SessionReader} for the layout.
+ */
+public final class SessionRecorder {
+    static final int DATA_MAGIC = 0x54485246;  // "THRF"
+    static final int INDEX_MAGIC = 0x54485249; // "THRI"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+    static final int RECORD_HEADER_BYTES = 36;
+    static final int INDEX_ENTRY_BYTES = 8;
+    private static final long MAP_CHUNK_BYTES = 16 * 1024 * 1024;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next slot to write out
+    private final AtomicLong tail = new AtomicLong(); // next slot to fill
+    private final AtomicLong dropped = new AtomicLong();
+    private final WriterThread writerThread;
+    private volatile boolean closed = false;
+    private volatile long written = 0;
+    private volatile IOException failure = null;
+
+    private static final class Slot {
+        short[] pixels = new short[0];
+        int width;
+        int height;
+        long timestampNanos;
+        int tuningState;
+        int viewWidth;
+        int viewHeight;
+        int numPanelsWide;
+        int numPanelsHigh;
+    }
+
+    /**
+     * Creates (or truncates) dataFile and the index file next to it, and starts the writer thread.
+     *
+     * @param capacity how many frames may be waiting to be written, rounded up to a power of two
+     */
+    public SessionRecorder(File dataFile, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        writerThread = new WriterThread(dataFile, getIndexFile(dataFile));
+        writerThread.start();
+    }
+
+    /**
+     * @return the index file that accompanies a data file
+     */
+    public static File getIndexFile(File dataFile) {
+        return new File(dataFile.getPath() + ".idx");
+    }
+
+    /**
+     * Queues a frame for writing.  Only ever called from the frame processing thread; never
+     * blocks, and only allocates the first time a slot sees a frame of this size.
+     *
+     * @param tuningState an application-defined code for the sensor's tuning state
+     * @return false if the frame was dropped because the writer is too far behind
+     */
+    public boolean record(RadiometricFrame frame, int tuningState, GridGeometry geometry) {
+        long t = tail.get();
+        if (closed || (t - head.get() > mask)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        Slot slot = slots[(int)(t & mask)];
+        int count = frame.getWidth() * frame.getHeight();
+        if (slot.pixels.length < count) {
+            slot.pixels = new short[count];
+        }
+        System.arraycopy(frame.getPixels(), 0, slot.pixels, 0, count);
+        slot.width = frame.getWidth();
+        slot.height = frame.getHeight();
+        slot.timestampNanos = frame.getTimestampNanos();
+        slot.tuningState = tuningState;
+        slot.viewWidth = geometry.getWidth();
+        slot.viewHeight = geometry.getHeight();
+        slot.numPanelsWide = geometry.getNumPanelsWide();
+        slot.numPanelsHigh = geometry.getNumPanelsHigh();
+        tail.lazySet(t + 1);
+        LockSupport.unpark(writerThread);
+        return true;
+    }
+
+    /**
+     * Writes out any queued frames, trims the files to their final size and stops the writer.
+     *
+     * @throws IOException if the writer failed at any point during the session
+     */
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "written=" + written + " dropped=" + dropped.get();
+    }
+
+    private class WriterThread extends Thread {
+        private final File dataFile;
+        private final File indexFile;
+        private FileChannel dataChannel;
+        private FileChannel indexChannel;
+        private MappedByteBuffer dataMap;
+        private long dataMapStart;
+        private MappedByteBuffer indexMap;
+        private long indexMapStart;
+
+        public WriterThread(File dataFile, File indexFile) {
+            super("SessionRecorder");
+            this.dataFile = dataFile;
+            this.indexFile = indexFile;
+        }
+
+        @Override
+        public void run() {
+            try {
+                open();
+                while (true) {
+                    long h = head.get();
+                    long t = tail.get();
+                    if (h == t) {
+                        if (closed) {
+                            break;
+                        }
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    // Write everything queued as one batch before handing the slots back.
+                    for (long i = h; i < t; i++) {
+                        write(slots[(int)(i & mask)]);
+                    }
+                    written += t - h;
+                    head.lazySet(t);
+                }
+            } catch (IOException e) {
+                failure = e;
+                closed = true;
+            } finally {
+                finish();
+            }
+        }
+
+        private void open() throws IOException {
+            dataChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+            indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+            dataChannel.truncate(0);
+            indexChannel.truncate(0);
+            dataMap = map(dataChannel, 0, FILE_HEADER_BYTES);
+            dataMapStart = 0;
+            dataMap.putInt(DATA_MAGIC).putInt(VERSION);
+            indexMap = map(indexChannel, 0, FILE_HEADER_BYTES);
+            indexMapStart = 0;
+            indexMap.putInt(INDEX_MAGIC).putInt(VERSION);
+        }
+
+        private void write(Slot slot) throws IOException {
+            int pixelCount = slot.width * slot.height;
+            int recordBytes = RECORD_HEADER_BYTES + pixelCount * 2;
+            if (dataMap.remaining() < recordBytes) {
+                long position = dataMapStart + dataMap.position();
+                dataMap = map(dataChannel, position, recordBytes);
+                dataMapStart = position;
+            }
+            if (indexMap.remaining() < INDEX_ENTRY_BYTES) {
+                long position = indexMapStart + indexMap.position();
+                indexMap = map(indexChannel, position, INDEX_ENTRY_BYTES);
+                indexMapStart = position;
+            }
+            indexMap.putLong(dataMapStart + dataMap.position());
+            dataMap.putLong(slot.timestampNanos)
+                   .putInt(slot.width)
+                   .putInt(slot.height)
+                   .putInt(slot.tuningState)
+                   .putInt(slot.viewWidth)
+                   .putInt(slot.viewHeight)
+                   .putInt(slot.numPanelsWide)
+                   .putInt(slot.numPanelsHigh);
+            dataMap.asShortBuffer().put(slot.pixels, 0, pixelCount);
+            dataMap.position(dataMap.position() + pixelCount * 2);
+        }
+
+        private MappedByteBuffer map(FileChannel channel, long position, long minimumBytes) throws IOException {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(MAP_CHUNK_BYTES, minimumBytes));
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return map;
+        }
+
+        private void finish() {
+            // Mapping ahead grows the files past what was written, so trim them back.
+            try {
+                if (dataChannel != null) {
+                    if (dataMap != null) {
+                        dataMap.force();
+                        dataChannel.truncate(dataMapStart + dataMap.position());
+                    }
+                    dataChannel.close();
+                }
+                if (indexChannel != null) {
+                    if (indexMap != null) {
+                        indexMap.force();
+                        indexChannel.truncate(indexMapStart + indexMap.position());
+                    }
+                    indexChannel.close();
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Optional clean-up of the per-panel temperatures before they are thresholded:
+ *
+ * <ul>
+ * <li>background subtraction - each panel minus the mean of the panels around it, so a warm hand
+ *     stands out against a warm wall as well as a cold one</li>
+ * <li>box smoothing - repeated box blurs, to suppress single-panel noise</li>
+ * </ul>
+ *
+ * Both stages use running sums, so their cost per panel is constant whatever the radius, and all
+ * buffers are reused from frame to frame.  Every stage is off by default.  Only ever used from
+ * the frame processing thread, apart from the setters.
+ */
+public final class SpatialFilter {
+    private int backgroundRadius = 0;
+    private int smoothingRadius = 1;
+    private int smoothingPasses = 0;
+
+    private int[] values = new int[0];
+    private int[] scratch = new int[0];
+    private long[] summedAreaTable = new long[0];
+    private short[] output = new short[0];
+    private long total;
+
+    public int getBackgroundRadius() {
+        return backgroundRadius;
+    }
+
+    /**
+     * @param radius how many panels either side make up the local background, or 0 to not
+     *               subtract a background
+     */
+    public void setBackgroundRadius(int radius) {
+        this.backgroundRadius = radius;
+    }
+
+    public int getSmoothingRadius() {
+        return smoothingRadius;
+    }
+
+    public void setSmoothingRadius(int radius) {
+        this.smoothingRadius = radius;
+    }
+
+    public int getSmoothingPasses() {
+        return smoothingPasses;
+    }
+
+    /**
+     * @param passes how many times to box blur the panels, or 0 to not smooth
+     */
+    public void setSmoothingPasses(int passes) {
+        this.smoothingPasses = passes;
+    }
+
+    /**
+     * Runs the enabled stages over a frame's panel values.
+     *
+     * @return the filtered values, indexed x + y * numPanelsWide - owned by this filter and only
+     *         valid until the next call
+     */
+    public short[] apply(GridGeometry geometry, short[] panelValues) {
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        int numPanels = numPanelsWide * numPanelsHigh;
+        if (values.length != numPanels) {
+            values = new int[numPanels];
+            scratch = new int[numPanels];
+            summedAreaTable = new long[(numPanelsWide + 1) * (numPanelsHigh + 1)];
+            output = new short[numPanels];
+        }
+        for (int i = 0; i < numPanels; i++) {
+            values[i] = panelValues[i];
+        }
+
+        int radius = backgroundRadius;
+        if (radius > 0) {
+            subtractBackground(numPanelsWide, numPanelsHigh, radius);
+        }
+        radius = smoothingRadius;
+        int passes = smoothingPasses;
+        if (radius > 0) {
+            for (int pass = 0; pass < passes; pass++) {
+                boxBlurRows(values, scratch, numPanelsWide, numPanelsHigh, radius);
+                boxBlurColumns(scratch, values, numPanelsWide, numPanelsHigh, radius);
+            }
+        }
+
+        long filteredTotal = 0;
+        for (int i = 0; i < numPanels; i++) {
+            int value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, values[i]));
+            output[i] = (short)value;
+            filteredTotal += value;
+        }
+        total = filteredTotal;
+        return output;
+    }
+
+    /**
+     * @return the mean of the values returned by the last {@link #apply}
+     */
+    public short getAverage() {
+        return (short)(total / Math.max(1, output.length));
+    }
+
+    private void subtractBackground(int numPanelsWide, int numPanelsHigh, int radius) {
+        int stride = numPanelsWide + 1;
+        long[] sat = summedAreaTable;
+        for (int y = 0; y < numPanelsHigh; y++) {
+            long rowTotal = 0;
+            for (int x = 0; x < numPanelsWide; x++) {
+                rowTotal += values[x + numPanelsWide * y];
+                sat[(y + 1) * stride + x + 1] = sat[y * stride + x + 1] + rowTotal;
+            }
+        }
+        for (int y = 0; y < numPanelsHigh; y++) {
+            int top = Math.max(0, y - radius);
+            int bottom = Math.min(numPanelsHigh - 1, y + radius);
+            for (int x = 0; x < numPanelsWide; x++) {
+                int left = Math.max(0, x - radius);
+                int right = Math.min(numPanelsWide - 1, x + radius);
+                long windowTotal = sat[(bottom + 1) * stride + right + 1] - sat[top * stride + right + 1] - sat[(bottom + 1) * stride + left] + sat[top * stride + left];
+                int windowCount = (right - left + 1) * (bottom - top + 1);
+                int index = x + numPanelsWide * y;
+                if (windowCount > 1) {
+                    // The background excludes the panel itself.
+                    int localMean = (int)((windowTotal - values[index]) / (windowCount - 1));
+                    scratch[index] = values[index] - localMean;
+                } else {
+                    scratch[index] = 0;
+                }
+            }
+        }
+        System.arraycopy(scratch, 0, values, 0, values.length);
+    }
+
+    private static void boxBlurRows(int[] in, int[] out, int width, int height, int radius) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            long windowTotal = 0;
+            int windowCount = 0;
+            for (int x = 0; x < Math.min(radius, width); x++) {
+                windowTotal += in[row + x];
+                windowCount++;
+            }
+            for (int x = 0; x < width; x++) {
+                int enter = x + radius;
+                if (enter < width) {
+                    windowTotal += in[row + enter];
+                    windowCount++;
+                }
+                int leave = x - radius - 1;
+                if (leave >= 0) {
+                    windowTotal -= in[row + leave];
+                    windowCount--;
+                }
+                out[row + x] = (int)(windowTotal / windowCount);
+            }
+        }
+    }
+
+    private static void boxBlurColumns(int[] in, int[] out, int width, int height, int radius) {
+        for (int x = 0; x < width; x++) {
+            long windowTotal = 0;
+            int windowCount = 0;
+            for (int y = 0; y < Math.min(radius, height); y++) {
+                windowTotal += in[x + y * width];
+                windowCount++;
+            }
+            for (int y = 0; y < height; y++) {
+                int enter = y + radius;
+                if (enter < height) {
+                    windowTotal += in[x + enter * width];
+                    windowCount++;
+                }
+                int leave = y - radius - 1;
+                if (leave >= 0) {
+                    windowTotal -= in[x + leave * width];
+                    windowCount--;
+                }
+                out[x + y * width] = (int)(windowTotal / windowCount);
+            }
+        }
+    }
+}
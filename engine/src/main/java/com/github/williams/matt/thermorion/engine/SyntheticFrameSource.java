@@ -0,0 +1,120 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Generates a scene of warm blobs drifting and bouncing over a room-temperature background with a
+ * little sensor noise, at a configurable resolution and frame rate.
+ *
+ * Frame n depends only on the seed and n, so headless runs are repeatable.
+ */
+public final class SyntheticFrameSource extends PacedFrameSource {
+    /** 20 degrees C, in hundredths of a Kelvin. */
+    public static final short BACKGROUND = 29315;
+    /** How much hotter than the background a blob's centre is. */
+    public static final int BLOB_HEAT = 1000;
+    private static final int NOISE = 16;
+
+    private final int width;
+    private final int height;
+    private final float framesPerSecond;
+    private final long seed;
+    private final RadiometricFrame frame;
+    // Per blob, in units of the frame size (and frames per second for the velocities).
+    private final float[] startX;
+    private final float[] startY;
+    private final float[] velocityX;
+    private final float[] velocityY;
+    private final float[] radius;
+
+    /**
+     * @param framesPerSecond how fast to deliver frames once started, or 0 for as fast as possible
+     */
+    public SyntheticFrameSource(int width, int height, float framesPerSecond, int numBlobs, long seed) {
+        super("SyntheticFrameSource");
+        this.width = width;
+        this.height = height;
+        this.framesPerSecond = framesPerSecond;
+        this.seed = seed;
+        frame = new RadiometricFrame(width, height);
+        startX = new float[numBlobs];
+        startY = new float[numBlobs];
+        velocityX = new float[numBlobs];
+        velocityY = new float[numBlobs];
+        radius = new float[numBlobs];
+        long state = (seed ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < numBlobs; i++) {
+            state = next(state);
+            startX[i] = unit(state);
+            state = next(state);
+            startY[i] = unit(state);
+            state = next(state);
+            velocityX[i] = (unit(state) - 0.5f) * 0.1f;
+            state = next(state);
+            velocityY[i] = (unit(state) - 0.5f) * 0.1f;
+            state = next(state);
+            radius[i] = 0.05f + unit(state) * 0.1f;
+        }
+    }
+
+    private static long next(long state) {
+        // xorshift64
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return state;
+    }
+
+    private static float unit(long state) {
+        return (state >>> 40) / (float)(1L << 24);
+    }
+
+    private static float bounce(float position) {
+        // Reflect off 0 and 1, so blobs stay in view forever.
+        float phase = position - 2.0f * (float)Math.floor(position / 2.0f);
+        return (phase > 1.0f) ? 2.0f - phase : phase;
+    }
+
+    /**
+     * Renders frame number n into a frame owned by this source, which is returned.
+     */
+    public RadiometricFrame render(long n, long timestampNanos) {
+        short[] pixels = frame.getPixels();
+        long state = next(seed ^ (n * 0x9e3779b97f4a7c15L) | 1);
+        for (int i = 0; i < width * height; i++) {
+            state = next(state);
+            pixels[i] = (short)(BACKGROUND + (int)(state & (NOISE - 1)) - NOISE / 2);
+        }
+        float seconds = (framesPerSecond > 0) ? n / framesPerSecond : n / 10.0f;
+        int size = Math.min(width, height);
+        for (int b = 0; b < radius.length; b++) {
+            int centreX = (int)(bounce(startX[b] + velocityX[b] * seconds) * (width - 1));
+            int centreY = (int)(bounce(startY[b] + velocityY[b] * seconds) * (height - 1));
+            int r = Math.max(1, (int)(radius[b] * size));
+            int r2 = r * r;
+            for (int y = Math.max(0, centreY - r); y <= Math.min(height - 1, centreY + r); y++) {
+                int dy = y - centreY;
+                for (int x = Math.max(0, centreX - r); x <= Math.min(width - 1, centreX + r); x++) {
+                    int dx = x - centreX;
+                    int d2 = dx * dx + dy * dy;
+                    if (d2 < r2) {
+                        pixels[x + y * width] += (short)(BLOB_HEAT * (r2 - d2) / r2);
+                    }
+                }
+            }
+        }
+        frame.set(pixels, width, height, timestampNanos);
+        return frame;
+    }
+
+    @Override
+    protected void produce(Listener listener) {
+        long start = System.nanoTime();
+        long periodNanos = (framesPerSecond > 0) ? (long)(1000000000L / framesPerSecond) : 0;
+        for (long n = 0; isRunning(); n++) {
+            long deadline = start + n * periodNanos;
+            if (!sleepUntil(deadline)) {
+                break;
+            }
+            listener.onFrame(render(n, System.nanoTime()));
+        }
+    }
+}
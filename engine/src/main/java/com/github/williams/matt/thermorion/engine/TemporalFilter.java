@@ -0,0 +1,82 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Per-panel exponential moving average of panel temperatures across frames, so that sensor noise
+ * on a panel sitting near the threshold doesn't make its note flicker.
+ *
+ * With the default weight of 1 each frame replaces the last and the filter does nothing.  Only
+ * ever used from the frame processing thread, apart from the setter.
+ */
+public final class TemporalFilter {
+    private float weight = 1.0f;
+    private float[] averages = new float[0];
+    private short[] output = new short[0];
+    private boolean primed = false;
+    private long total;
+
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param weight how much of each new frame to blend in, from just above 0 (heavy smoothing)
+     *               to 1 (none)
+     */
+    public void setWeight(float weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return how many more frames the averages take to come within 1% of a step change in the
+     *         input, or Integer.MAX_VALUE if they never will
+     */
+    public int getSettleFrames() {
+        float alpha = Math.max(0.0f, Math.min(1.0f, weight));
+        if (alpha >= 1.0f) {
+            return 0;
+        } else if (alpha <= 0.0f) {
+            return Integer.MAX_VALUE;
+        }
+        return (int)Math.ceil(Math.log(0.01) / Math.log(1.0 - alpha));
+    }
+
+    /**
+     * Forgets the history, e.g. because the panels now cover different parts of the view.
+     */
+    public void reset() {
+        primed = false;
+    }
+
+    /**
+     * Blends a frame's panel values into the running averages.
+     *
+     * @return the averaged values - owned by this filter and only valid until the next call
+     */
+    public short[] apply(short[] panelValues) {
+        int numPanels = panelValues.length;
+        if (averages.length != numPanels) {
+            averages = new float[numPanels];
+            output = new short[numPanels];
+            primed = false;
+        }
+        float alpha = primed ? Math.max(0.0f, Math.min(1.0f, weight)) : 1.0f;
+        long averagedTotal = 0;
+        for (int i = 0; i < numPanels; i++) {
+            float average = averages[i] + alpha * (panelValues[i] - averages[i]);
+            averages[i] = average;
+            short value = (short)Math.round(average);
+            output[i] = value;
+            averagedTotal += value;
+        }
+        primed = true;
+        total = averagedTotal;
+        return output;
+    }
+
+    /**
+     * @return the mean of the values returned by the last {@link #apply}
+     */
+    public short getAverage() {
+        return (short)(total / Math.max(1, output.length));
+    }
+}
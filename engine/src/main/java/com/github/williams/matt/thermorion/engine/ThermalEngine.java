@@ -0,0 +1,204 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The frame-to-grid pipeline behind Thermori-on, free of any Android dependency.
+ *
+ * Bounds are set from the UI thread and frames are processed on a single frame thread; readers
+ * (renderer, sequencer) pick up the latest {@link ToneGrid} without locking.
+ */
+public class ThermalEngine {
+    /**
+     * Frames with fewer pixels than this (e.g. the FLIR One's 160x120) are reduced on the frame
+     * thread even when there are workers, since handing them off would cost more than it saves.
+     */
+    public static final int PARALLEL_MIN_PIXELS = 320 * 240;
+
+    private final SpatialFilter filter = new SpatialFilter();
+    private final TemporalFilter temporalFilter = new TemporalFilter();
+    private final ChangeDetector changeDetector = new ChangeDetector();
+    private final ToneThresholder thresholder = new ToneThresholder();
+    private final PipelineStats stats = new PipelineStats();
+    private final Sequencer sequencer = new Sequencer(stats.get(PipelineStats.Stage.ONSET), stats.get(PipelineStats.Stage.STEP));
+    private volatile ToneGrid toneGrid = new ToneGrid(new GridGeometry(0, 0));
+    private volatile int rotation = 0;
+    // Only touched by the frame thread.
+    private PanelReducer reducer = null;
+    private ToneGrid previousGrid = null;
+    // Per-panel scratch for the thresholder, which needs to look at neighbours, packed into the
+    // grid's timeslot words on publish.
+    private boolean[] tones = new boolean[0];
+    private boolean[] previousTones = new boolean[0];
+    private int settleFrames = 0;
+    private Palette colorizedPalette = null;
+    private volatile Colorizer colorizer = null;
+    private final ForkJoinPool pool;
+
+    public ThermalEngine() {
+        this(1);
+    }
+
+    /**
+     * @param workers how many threads to reduce large frames on - 1 keeps everything on the frame
+     *                thread
+     */
+    public ThermalEngine(int workers) {
+        pool = (workers > 1) ? new ForkJoinPool(workers) : null;
+    }
+
+    /**
+     * Stops the reduction workers, if there are any.  Call once frames have stopped arriving; the
+     * engine can't process any more afterwards.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lays the grid out over a view of the given size and restarts the sequence.
+     *
+     * @param now the System.nanoTime() at which the sequence restarts
+     */
+    public void setBounds(int width, int height, long now) {
+        setBounds(width, height, GridGeometry.DEFAULT_DIVISIONS, now);
+    }
+
+    /**
+     * @param divisions number of panels along the shorter side of the view
+     */
+    public void setBounds(int width, int height, int divisions, long now) {
+        ToneGrid newToneGrid = new ToneGrid(new GridGeometry(width, height, divisions));
+        newToneGrid.setRotation(rotation);
+        toneGrid = newToneGrid;
+        sequencer.reset(newToneGrid, now);
+    }
+
+    /**
+     * Re-maps the grid for the device having been turned, from the next frame on.  Unlike
+     * {@link #setBounds}, this keeps the sequence playing in time and reuses every buffer.
+     *
+     * @param degrees clockwise from the device's natural orientation: 0, 90, 180 or 270
+     */
+    public void setRotation(int degrees) {
+        rotation = degrees;
+        toneGrid.setRotation(degrees);
+    }
+
+    public ToneGrid getToneGrid() {
+        return toneGrid;
+    }
+
+    public GridGeometry getGeometry() {
+        return toneGrid.getGeometry();
+    }
+
+    public Sequencer getSequencer() {
+        return sequencer;
+    }
+
+    public SpatialFilter getFilter() {
+        return filter;
+    }
+
+    public TemporalFilter getTemporalFilter() {
+        return temporalFilter;
+    }
+
+    public ChangeDetector getChangeDetector() {
+        return changeDetector;
+    }
+
+    public ToneThresholder getThresholder() {
+        return thresholder;
+    }
+
+    /**
+     * @return latency histograms for the whole pipeline - this engine records PROCESS, ONSET and
+     *         STEP, and the front end the rest
+     */
+    public PipelineStats getStats() {
+        return stats;
+    }
+
+    public Colorizer getColorizer() {
+        return colorizer;
+    }
+
+    /**
+     * @param colorizer renders each processed frame for display, reusing the reduction's range
+     *                  pass, or null to not render frames
+     */
+    public void setColorizer(Colorizer colorizer) {
+        this.colorizer = colorizer;
+    }
+
+    /**
+     * Reduces the frame onto the grid and publishes the resulting tone state.  Allocates only when
+     * the bounds or the sensor resolution have changed since the previous frame.
+     *
+     * A frame the {@link ChangeDetector} finds no different from the last one processed is skipped,
+     * unless the temporal filter is still settling towards that frame, the palette has changed or
+     * the grid has a rotation to pick up.
+     *
+     * @return false if the frame was skipped, so neither the tone grid nor the colorizer's output
+     *         has changed
+     */
+    public boolean processFrame(RadiometricFrame frame) {
+        long start = System.nanoTime();
+        boolean processed = reduceFrame(frame);
+        if (processed) {
+            stats.get(PipelineStats.Stage.PROCESS).record(System.nanoTime() - start);
+        }
+        stats.recordFrame(!processed);
+        return processed;
+    }
+
+    private boolean reduceFrame(RadiometricFrame frame) {
+        ToneGrid grid = toneGrid;
+        GridGeometry geometry = grid.getGeometry();
+        Colorizer frameColorizer = colorizer;
+        if (geometry.isEmpty()) {
+            if (frameColorizer != null) {
+                frameColorizer.colorize(frame);
+            }
+            return true;
+        }
+        boolean changed = changeDetector.hasChanged(frame);
+        Palette palette = (frameColorizer != null) ? frameColorizer.getPalette() : null;
+        if (!changed && (grid == previousGrid) && (settleFrames == 0) && (palette == colorizedPalette) &&
+                !grid.isRotationPending()) {
+            return false;
+        }
+        changeDetector.accept();
+        settleFrames = changed ? temporalFilter.getSettleFrames() : Math.max(0, settleFrames - 1);
+        if ((reducer == null) || !reducer.matches(geometry, frame.getWidth(), frame.getHeight())) {
+            boolean parallel = frame.getWidth() * frame.getHeight() >= PARALLEL_MIN_PIXELS;
+            reducer = new PanelReducer(geometry, frame.getWidth(), frame.getHeight(), parallel ? pool : null);
+        }
+        reducer.reduce(frame);
+        if (frameColorizer != null) {
+            frameColorizer.colorize(frame, reducer.getPixelMinimum(), reducer.getPixelMaximum());
+        }
+        colorizedPalette = palette;
+        if (grid != previousGrid) {
+            // The panels have moved, so neither their history nor their last state carries over.
+            temporalFilter.reset();
+            previousGrid = grid;
+            tones = new boolean[geometry.getNumPanels()];
+            previousTones = new boolean[geometry.getNumPanels()];
+        }
+        short[] panelValues = filter.apply(geometry, reducer.getPanelValues());
+        panelValues = temporalFilter.apply(panelValues);
+        int litCount = thresholder.threshold(geometry, panelValues, temporalFilter.getAverage(), previousTones, tones);
+        boolean[] swap = previousTones;
+        previousTones = tones;
+        tones = swap;
+        if (grid.publish(previousTones, litCount) && (litCount > 0)) {
+            sequencer.wake();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * The on/off state of every panel in a {@link GridGeometry}, packed as one long per timeslot with
+ * bit n set if voice n is lit (see {@link GridOrientation} for which panel that is).  A sequencer
+ * step is then a single word read, however dense the grid.
+ *
+ * Tone state is double-buffered: the frame thread fills the back buffer and publishes it by
+ * flipping the volatile front index, so readers never need a lock.  A frame that leaves every
+ * panel as it was publishes nothing, so {@link #getGeneration()} only moves on a real change.
+ *
+ * Each published state also records which panels changed from the one before, so readers that
+ * keep up with every generation can update just those panels - see {@link #copyChanges}.
+ *
+ * The orientations for all four device rotations are built up front.  Turning the device just
+ * packs the next published state through a different one, into the same buffers.
+ */
+public final class ToneGrid {
+    /** The most voices a timeslot's word can hold. */
+    public static final int MAX_VOICES = 64;
+
+    private final GridGeometry geometry;
+    private final GridOrientation[] orientations = new GridOrientation[4];
+    private final long[][] buffers;
+    private final int[] rotations = new int[2];
+    private final int[] litCounts = new int[2];
+    private final int[] generations = new int[2];
+    private final int[][] changedPanels;
+    private final int[] changedCounts = new int[2];
+    private volatile int front = 0;
+    private volatile int requestedRotation = 0;
+
+    public ToneGrid(GridGeometry geometry) {
+        if (geometry.getNumVoices() > MAX_VOICES) {
+            throw new IllegalArgumentException("Grid has " + geometry.getNumVoices() + " voices, more than " + MAX_VOICES);
+        }
+        this.geometry = geometry;
+        for (int rotation = 0; rotation < orientations.length; rotation++) {
+            orientations[rotation] = new GridOrientation(geometry, rotation);
+        }
+        buffers = new long[2][geometry.isEmpty() ? 0 : geometry.getNumTimeslots()];
+        changedPanels = new int[2][geometry.getNumPanels()];
+    }
+
+    public GridGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Sets the device rotation that tones are published for from the next frame on.
+     *
+     * @param degrees clockwise from the device's natural orientation, rounded down to a quarter turn
+     */
+    public void setRotation(int degrees) {
+        requestedRotation = ((degrees / 90) % 4 + 4) % 4;
+    }
+
+    /**
+     * @return whether a rotation has been set that the published tone state does not yet reflect
+     */
+    public boolean isRotationPending() {
+        return requestedRotation != rotations[front];
+    }
+
+    /**
+     * @return the orientation the most recently published tone state was packed with - read it
+     *         before {@link #getTimeslots()}
+     */
+    public GridOrientation getOrientation() {
+        return orientations[rotations[front]];
+    }
+
+    /**
+     * @return the most recently published tone state, one word per timeslot - callers must not
+     *         modify it
+     */
+    public long[] getTimeslots() {
+        return buffers[front];
+    }
+
+    public boolean isLit(int x, int y) {
+        int current = front;
+        return orientations[rotations[current]].isLit(buffers[current], x, y);
+    }
+
+    /**
+     * @return how many panels are lit in the most recently published tone state
+     */
+    public int getLitCount() {
+        return litCounts[front];
+    }
+
+    /**
+     * @return a counter that changes whenever the published tone state does - read it before
+     *         {@link #getTimeslots()} to know whether anything derived from the tones is stale
+     */
+    public int getGeneration() {
+        return generations[front];
+    }
+
+    /**
+     * Copies the indices of the panels that changed in going from generation fromGeneration to
+     * the one after it, if that is the most recently published state.
+     *
+     * @param changes receives the panel indices, x + y * numPanelsWide - must have room for every
+     *                panel
+     * @return the number of changed panels, or -1 if the reader has fallen more than one
+     *         generation behind, or the orientation has changed, and it must re-read the whole of
+     *         {@link #getTimeslots()}
+     */
+    public int copyChanges(int fromGeneration, int[] changes) {
+        int current = front;
+        if (generations[current] != fromGeneration + 1) {
+            return -1;
+        }
+        int count = changedCounts[current];
+        System.arraycopy(changedPanels[current], 0, changes, 0, count);
+        return count;
+    }
+
+    /**
+     * Packs per-panel tones into the back buffer, through the requested rotation's orientation,
+     * and publishes it if anything changed.  Only ever called from the frame processing thread.
+     *
+     * @param tones indexed x + y * numPanelsWide
+     * @return false if the tones matched the current state, so nothing was published
+     */
+    boolean publish(boolean[] tones, int litCount) {
+        int current = front;
+        int back = current ^ 1;
+        int rotation = requestedRotation;
+        boolean rotated = rotation != rotations[current];
+        long[] backTimeslots = buffers[back];
+        long[] frontTimeslots = buffers[current];
+        int[] panels = orientations[rotation].getPanels();
+        int[] changes = changedPanels[back];
+        int count = 0;
+        int numVoices = geometry.getNumVoices();
+        for (int timeslot = 0, index = 0; timeslot < backTimeslots.length; timeslot++) {
+            int first = index;
+            long bits = 0;
+            for (int voice = 0; voice < numVoices; voice++, index++) {
+                if (tones[panels[index]]) {
+                    bits |= 1L << voice;
+                }
+            }
+            backTimeslots[timeslot] = bits;
+            if (rotated) {
+                continue; // Words from another orientation can't be compared bit for bit.
+            }
+            long changed = bits ^ frontTimeslots[timeslot];
+            while (changed != 0) {
+                int voice = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                changes[count++] = panels[first + voice];
+            }
+        }
+        if ((count == 0) && !rotated) {
+            return false;
+        }
+        changedCounts[back] = count;
+        litCounts[back] = litCount;
+        rotations[back] = rotation;
+        // Skipping a generation on rotation sends every reader back to a full re-read.
+        generations[back] = generations[current] + (rotated ? 2 : 1);
+        front = back;
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Decides which panels are "hot" enough to sound: anything more than a fixed offset above the
+ * frame's mean panel temperature.
+ *
+ * Two refinements can be switched on.  Non-maximum suppression only lets a panel light if none of
+ * its four neighbours is hotter, so a warm blob sounds one note rather than a cluster.
+ * Hysteresis then grows each lit panel into connected neighbours that clear a second, lower
+ * offset, so the edges of a blob don't flicker on and off around a single threshold.
+ *
+ * Given the previous frame's tones, a panel that was already lit also only goes out once it drops
+ * below a separate off offset, so it takes a real crossing rather than noise to change its state.
+ */
+public final class ToneThresholder {
+    /** Default offset above the mean, in hundredths of a Kelvin. */
+    public static final int DEFAULT_OFFSET = 50;
+
+    private int offset = DEFAULT_OFFSET;
+    private int lowOffset = DEFAULT_OFFSET;
+    private int offOffset = DEFAULT_OFFSET;
+    private boolean suppressNonMaxima = false;
+    // Panels waiting to be grown from during hysteresis.
+    private int[] pending = new int[0];
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLowOffset() {
+        return lowOffset;
+    }
+
+    /**
+     * @param lowOffset offset above the mean that panels next to lit ones must clear to light too;
+     *                  hysteresis is off unless this is below {@link #getOffset()}
+     */
+    public void setLowOffset(int lowOffset) {
+        this.lowOffset = lowOffset;
+    }
+
+    public int getOffOffset() {
+        return offOffset;
+    }
+
+    /**
+     * @param offOffset offset above the mean below which an already lit panel goes out - set it
+     *                  below {@link #getOffset()} to stop panels near the threshold flickering
+     */
+    public void setOffOffset(int offOffset) {
+        this.offOffset = offOffset;
+    }
+
+    public boolean isSuppressingNonMaxima() {
+        return suppressNonMaxima;
+    }
+
+    public void setSuppressNonMaxima(boolean suppressNonMaxima) {
+        this.suppressNonMaxima = suppressNonMaxima;
+    }
+
+    /**
+     * @return the number of panels lit
+     */
+    public int threshold(GridGeometry geometry, short[] thermalData, short thermalAverage, boolean[] tones) {
+        return threshold(geometry, thermalData, thermalAverage, null, tones);
+    }
+
+    /**
+     * @param previousTones the tones from the previous frame, or null if there are none
+     * @return the number of panels lit
+     */
+    public int threshold(GridGeometry geometry, short[] thermalData, short thermalAverage, boolean[] previousTones, boolean[] tones) {
+        int numPanelsWide = geometry.getNumPanelsWide();
+        int numPanelsHigh = geometry.getNumPanelsHigh();
+        int thermalThreshold = thermalAverage + offset;
+        int offThreshold = thermalAverage + offOffset;
+        int lowThreshold = thermalAverage + lowOffset;
+        boolean hysteresis = (lowThreshold < thermalThreshold);
+        boolean suppress = suppressNonMaxima;
+        if (hysteresis && (pending.length < thermalData.length)) {
+            pending = new int[thermalData.length];
+        }
+        int pendingCount = 0;
+        int litCount = 0;
+        for (int y = 0; y < numPanelsHigh; y++) {
+            for (int x = 0; x < numPanelsWide; x++) {
+                int index = x + numPanelsWide * y;
+                short thermalValue = thermalData[index];
+                boolean wasLit = (previousTones != null) && previousTones[index];
+                boolean lit = (thermalValue > (wasLit ? offThreshold : thermalThreshold));
+                if (lit && suppress) {
+                    lit = !(((x > 0) && (thermalData[index - 1] > thermalValue)) ||
+                            ((y > 0) && (thermalData[index - numPanelsWide] > thermalValue)) ||
+                            ((x < numPanelsWide - 1) && (thermalData[index + 1] > thermalValue)) ||
+                            ((y < numPanelsHigh - 1) && (thermalData[index + numPanelsWide] > thermalValue)));
+                }
+                tones[index] = lit;
+                if (lit) {
+                    litCount++;
+                    if (hysteresis) {
+                        pending[pendingCount++] = index;
+                    }
+                }
+            }
+        }
+        // Each panel is pushed at most once, as it is lit before being pushed.
+        while (pendingCount > 0) {
+            int index = pending[--pendingCount];
+            int x = index % numPanelsWide;
+            int y = index / numPanelsWide;
+            if ((x > 0) && grow(thermalData, lowThreshold, tones, index - 1)) {
+                pending[pendingCount++] = index - 1;
+                litCount++;
+            }
+            if ((y > 0) && grow(thermalData, lowThreshold, tones, index - numPanelsWide)) {
+                pending[pendingCount++] = index - numPanelsWide;
+                litCount++;
+            }
+            if ((x < numPanelsWide - 1) && grow(thermalData, lowThreshold, tones, index + 1)) {
+                pending[pendingCount++] = index + 1;
+                litCount++;
+            }
+            if ((y < numPanelsHigh - 1) && grow(thermalData, lowThreshold, tones, index + numPanelsWide)) {
+                pending[pendingCount++] = index + numPanelsWide;
+                litCount++;
+            }
+        }
+        return litCount;
+    }
+
+    private static boolean grow(short[] thermalData, int lowThreshold, boolean[] tones, int index) {
+        if (!tones[index] && (thermalData[index] > lowThreshold)) {
+            tones[index] = true;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free single-producer/single-consumer triple buffer over three preallocated objects.
+ *
+ * The producer always has a back buffer to fill and the consumer a front buffer to read, so
+ * neither ever waits for or overwrites the other.  Publishing swaps the back buffer with the
+ * shared middle one; the consumer swaps its front buffer with the middle one only when something
+ * new has been published.  If the producer publishes twice before the consumer looks, the older
+ * buffer is simply reused.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    // Index of the middle buffer, plus FRESH if it was published since the consumer last swapped.
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[] {first, second, third};
+    }
+
+    /**
+     * @return the buffer the producer may fill - only call from the producer thread
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T)buffers[back];
+    }
+
+    /**
+     * Hands the filled back buffer to the consumer and gives the producer a new one.  Only call
+     * from the producer thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Takes the most recently published buffer as the new front buffer, if there is one.  Only
+     * call from the consumer thread.
+     *
+     * @return whether the front buffer changed
+     */
+    public boolean swap() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * @return the buffer the consumer may read - only call from the consumer thread
+     */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T)buffers[front];
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Hands out a fixed number of voice slots to notes, so that however much of the grid lights up,
+ * no more than that many notes ever sound at once.
+ *
+ * When every slot is busy, the {@link Policy} picks a note to steal from, or turns the new note
+ * away.  Ties always go against the note that started first, then the lowest slot, so the same
+ * notes always produce the same allocation.
+ *
+ * Times are in whatever unit the caller schedules in (output frames, nanoseconds), as long as it
+ * is used consistently.  A slot frees itself once its note's end time has passed, so callers need
+ * not report note-offs.  Allocation is owned by a single thread; the counters can be read from
+ * any.
+ */
+public final class VoiceAllocator {
+    public enum Policy {
+        /** Newer notes always sound, stealing from the one that started first. */
+        NEWEST,
+        /**
+         * The note that would sound quietest loses, taking each sounding note to fade linearly
+         * from its start volume to silence at its end.
+         */
+        LOUDEST,
+        /** The highest note loses, so the bass line survives a crowded step. */
+        LOWEST_PITCH;
+
+        /**
+         * @return the policy with the given name, ignoring case, or NEWEST if there is none
+         */
+        public static Policy parse(String name) {
+            for (Policy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            return NEWEST;
+        }
+    }
+
+    private final Policy policy;
+    private final long[] starts;
+    private final long[] ends;
+    private final int[] degrees;
+    private final float[] volumes;
+    private long allocatedCount = 0;
+    private volatile long stolenCount = 0;
+    private volatile long rejectedCount = 0;
+    private volatile int activeCount = 0;
+    private volatile int peakActiveCount = 0;
+
+    public VoiceAllocator(int numSlots, Policy policy) {
+        this.policy = policy;
+        starts = new long[numSlots];
+        ends = new long[numSlots];
+        degrees = new int[numSlots];
+        volumes = new float[numSlots];
+        reset();
+    }
+
+    public int getNumSlots() {
+        return starts.length;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Finds a slot for a note, stealing one if need be.
+     *
+     * @param start when the note starts - slots whose notes have ended by then are free
+     * @param end when the note will have finished
+     * @param degree the note's {@link Scale} degree
+     * @param volume 0 to 1
+     * @return the slot the note now owns, whose previous note must be cut short if it is still
+     *         sounding, or -1 if the new note should not be played
+     */
+    public int allocate(long start, long end, int degree, float volume) {
+        int free = -1;
+        int victim = -1;
+        int active = 0;
+        for (int slot = 0; slot < starts.length; slot++) {
+            if (ends[slot] <= start) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else {
+                active++;
+                if ((victim < 0) || losesTo(slot, victim, start)) {
+                    victim = slot;
+                }
+            }
+        }
+        int slot;
+        if (free >= 0) {
+            slot = free;
+            active++;
+        } else if ((victim >= 0) && canSteal(victim, start, degree, volume)) {
+            slot = victim;
+            stolenCount++;
+        } else {
+            rejectedCount++;
+            activeCount = active;
+            return -1;
+        }
+        starts[slot] = start;
+        ends[slot] = end;
+        degrees[slot] = degree;
+        volumes[slot] = volume;
+        allocatedCount++;
+        activeCount = active;
+        if (active > peakActiveCount) {
+            peakActiveCount = active;
+        }
+        return slot;
+    }
+
+    /**
+     * @return whether slot a's note should be stolen before slot b's
+     */
+    private boolean losesTo(int a, int b, long now) {
+        switch (policy) {
+            case LOUDEST: {
+                float loudnessA = getLoudness(a, now);
+                float loudnessB = getLoudness(b, now);
+                if (loudnessA != loudnessB) {
+                    return loudnessA < loudnessB;
+                }
+                break;
+            }
+            case LOWEST_PITCH:
+                if (degrees[a] != degrees[b]) {
+                    return degrees[a] > degrees[b];
+                }
+                break;
+            default:
+                break;
+        }
+        // Slots are scanned in order, so on an exact tie the lower slot is stolen.
+        return starts[a] < starts[b];
+    }
+
+    private boolean canSteal(int victim, long now, int degree, float volume) {
+        switch (policy) {
+            case LOUDEST:
+                return getLoudness(victim, now) <= volume;
+            case LOWEST_PITCH:
+                return degrees[victim] >= degree;
+            default:
+                return true;
+        }
+    }
+
+    private float getLoudness(int slot, long now) {
+        long duration = ends[slot] - starts[slot];
+        if (duration <= 0) {
+            return 0;
+        }
+        long elapsed = Math.max(0, now - starts[slot]);
+        return volumes[slot] * (duration - Math.min(elapsed, duration)) / duration;
+    }
+
+    /**
+     * Frees every slot, e.g. when playback restarts and the time base changes.
+     */
+    public void reset() {
+        for (int slot = 0; slot < starts.length; slot++) {
+            ends[slot] = Long.MIN_VALUE;
+        }
+        activeCount = 0;
+    }
+
+    /**
+     * @return notes given a slot, including by stealing - allocating thread only
+     */
+    public long getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /**
+     * @return notes cut short to make room for a new one
+     */
+    public long getStolenCount() {
+        return stolenCount;
+    }
+
+    /**
+     * @return notes not played because the policy ranked them below every sounding note
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return slots that were sounding as of the most recent allocation
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getPeakActiveCount() {
+        return peakActiveCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("voices %d/%d (peak %d)  stolen %d  rejected %d  %s", activeCount, starts.length,
+                peakActiveCount, stolenCount, rejectedCount, policy);
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.williams.matt.thermorion.engine;
+
+/**
+ * Mixes pre-rendered notes (see {@link SampleBank}) into a PCM output stream.
+ *
+ * Each note starts at an absolute output frame, so onsets land sample-accurately wherever they
+ * fall within a render buffer.  Voices are held in preallocated arrays and mixing is a plain
+ * scaled copy; rendering allocates nothing.  Not thread-safe - owned by the audio thread.
+ *
+ * A {@link VoiceAllocator} decides which voice each note gets.  A note that loses its voice to a
+ * newer one fades out over {@link #RELEASE_FRAMES} from the newer note's onset rather than
+ * stopping dead, which would click.
+ */
+public final class VoiceMixer {
+    public static final int RELEASE_FRAMES = 64;
+
+    private final VoiceAllocator allocator;
+    private final short[][] samples;
+    private final long[] startFrame;
+    private final int[] position;
+    private final float[] gain;
+    // The note each voice is releasing, if it was stolen.
+    private final short[][] releaseSamples;
+    private final long[] releaseStartFrame;
+    private final int[] releasePosition;
+    private final float[] releaseGain;
+    private final long[] releaseEndFrame;
+    private final int[] mix;
+    private long droppedNotes;
+
+    public VoiceMixer(int maxVoices, int maxBufferFrames) {
+        this(new VoiceAllocator(maxVoices, VoiceAllocator.Policy.NEWEST), maxBufferFrames);
+    }
+
+    /**
+     * @param allocator decides which voice each note gets, in output frames - the mixer has one
+     *                  voice per slot
+     */
+    public VoiceMixer(VoiceAllocator allocator, int maxBufferFrames) {
+        this.allocator = allocator;
+        int maxVoices = allocator.getNumSlots();
+        samples = new short[maxVoices][];
+        startFrame = new long[maxVoices];
+        position = new int[maxVoices];
+        gain = new float[maxVoices];
+        releaseSamples = new short[maxVoices][];
+        releaseStartFrame = new long[maxVoices];
+        releasePosition = new int[maxVoices];
+        releaseGain = new float[maxVoices];
+        releaseEndFrame = new long[maxVoices];
+        mix = new int[maxBufferFrames];
+    }
+
+    /**
+     * Schedules a note.
+     *
+     * @param frame absolute output frame at which the note starts
+     * @param sample the note, already rendered at the output sample rate
+     * @param degree the note's {@link Scale} degree, for the allocator
+     * @param volume 0 to 1
+     */
+    public void noteOn(long frame, short[] sample, int degree, float volume) {
+        int v = allocator.allocate(frame, frame + sample.length, degree, volume);
+        if (v < 0) {
+            droppedNotes++;
+            return;
+        }
+        if (samples[v] != null) {
+            releaseSamples[v] = samples[v];
+            releaseStartFrame[v] = startFrame[v];
+            releasePosition[v] = position[v];
+            releaseGain[v] = gain[v];
+            releaseEndFrame[v] = frame + RELEASE_FRAMES;
+        }
+        samples[v] = sample;
+        startFrame[v] = frame;
+        position[v] = 0;
+        gain[v] = volume;
+    }
+
+    /**
+     * Renders the next buffer of output.
+     *
+     * @param bufferStartFrame absolute output frame of out[0]
+     */
+    public void render(short[] out, int frames, long bufferStartFrame) {
+        int[] mix = this.mix;
+        for (int i = 0; i < frames; i++) {
+            mix[i] = 0;
+        }
+        for (int v = 0; v < samples.length; v++) {
+            short[] release = releaseSamples[v];
+            if (release != null) {
+                int pos = mixRelease(release, releaseStartFrame[v], releasePosition[v], releaseGain[v], releaseEndFrame[v], frames, bufferStartFrame);
+                if (pos < 0) {
+                    releaseSamples[v] = null;
+                } else {
+                    releasePosition[v] = pos;
+                }
+            }
+            short[] sample = samples[v];
+            if (sample == null) {
+                continue;
+            }
+            long offset = startFrame[v] - bufferStartFrame;
+            if (offset >= frames) {
+                continue; // Not due yet.
+            }
+            int i = (int)Math.max(0, offset);
+            int pos = position[v];
+            int count = Math.min(frames - i, sample.length - pos);
+            float g = gain[v];
+            for (int end = i + count; i < end; i++) {
+                mix[i] += (int)(sample[pos++] * g);
+            }
+            if (pos >= sample.length) {
+                samples[v] = null;
+            } else {
+                position[v] = pos;
+            }
+        }
+        for (int i = 0; i < frames; i++) {
+            int s = mix[i];
+            out[i] = (short)((s > Short.MAX_VALUE) ? Short.MAX_VALUE : (s < Short.MIN_VALUE) ? Short.MIN_VALUE : s);
+        }
+    }
+
+    /**
+     * Mixes in a stolen note, ramping it down to silence at endFrame.
+     *
+     * @return the note's new position, or -1 once it has finished
+     */
+    private int mixRelease(short[] sample, long start, int pos, float g, long endFrame, int frames, long bufferStartFrame) {
+        long offset = start - bufferStartFrame;
+        if (offset >= frames) {
+            return (start >= endFrame) ? -1 : pos; // Stolen before it started.
+        }
+        int i = (int)Math.max(0, offset);
+        int count = (int)Math.min(Math.min(frames - i, sample.length - pos), endFrame - (bufferStartFrame + i));
+        for (int end = i + count; i < end; i++) {
+            long remaining = endFrame - (bufferStartFrame + i);
+            float ramp = (remaining >= RELEASE_FRAMES) ? 1.0f : remaining / (float)RELEASE_FRAMES;
+            mix[i] += (int)(sample[pos++] * g * ramp);
+        }
+        return ((pos >= sample.length) || (bufferStartFrame + i >= endFrame)) ? -1 : pos;
+    }
+
+    public VoiceAllocator getAllocator() {
+        return allocator;
+    }
+
+    public int getActiveVoiceCount() {
+        int count = 0;
+        for (short[] sample : samples) {
+            if (sample != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return notes dropped because the allocator found them no voice
+     */
+    public long getDroppedNoteCount() {
+        return droppedNotes;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes uncompressed (8- or 16-bit PCM) RIFF WAVE files, mixing multi-channel audio down to mono.
+ */
+public final class WavDecoder {
+    private static final int FORMAT_PCM = 1;
+
+    private WavDecoder() {
+    }
+
+    public static PcmSample decode(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            bytes.write(chunk, 0, read);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        if ((buffer.remaining() < 12) || (buffer.getInt() != 0x46464952) /* RIFF */) {
+            throw new IOException("Not a RIFF file");
+        }
+        buffer.getInt(); // RIFF size
+        if (buffer.getInt() != 0x45564157) { // WAVE
+            throw new IOException("Not a WAVE file");
+        }
+
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        while (buffer.remaining() >= 8) {
+            int chunkId = buffer.getInt();
+            int chunkSize = buffer.getInt();
+            if (chunkSize < 0 || chunkSize > buffer.remaining()) {
+                chunkSize = buffer.remaining();
+            }
+            int chunkEnd = buffer.position() + chunkSize;
+            if (chunkId == 0x20746d66) { // "fmt "
+                if (buffer.getShort() != FORMAT_PCM) {
+                    throw new IOException("Only uncompressed PCM is supported");
+                }
+                channels = buffer.getShort();
+                sampleRate = buffer.getInt();
+                buffer.getInt(); // byte rate
+                buffer.getShort(); // block align
+                bitsPerSample = buffer.getShort();
+            } else if (chunkId == 0x61746164) { // "data"
+                if (channels <= 0) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                return new PcmSample(decodeSamples(buffer, chunkSize, channels, bitsPerSample), sampleRate);
+            }
+            // Chunks are padded to an even length.
+            buffer.position(Math.min(buffer.limit(), chunkEnd + (chunkSize & 1)));
+        }
+        throw new IOException("No data chunk");
+    }
+
+    private static short[] decodeSamples(ByteBuffer buffer, int size, int channels, int bitsPerSample) throws IOException {
+        int bytesPerSample = bitsPerSample / 8;
+        if ((bytesPerSample != 1) && (bytesPerSample != 2)) {
+            throw new IOException("Unsupported sample size: " + bitsPerSample);
+        }
+        int frames = size / (bytesPerSample * channels);
+        short[] data = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            int total = 0;
+            for (int c = 0; c < channels; c++) {
+                if (bytesPerSample == 2) {
+                    total += buffer.getShort();
+                } else {
+                    total += ((buffer.get() & 0xff) - 128) << 8;
+                }
+            }
+            data[i] = (short)(total / channels);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.williams.matt.thermorion.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes mono 16-bit PCM as a RIFF WAVE file.
+ */
+public final class WavEncoder {
+    private static final int HEADER_SIZE = 44;
+
+    private WavEncoder() {
+    }
+
+    public static void encode(short[] data, int sampleRate, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x46464952); // RIFF
+        buffer.putInt(HEADER_SIZE - 8 + data.length * 2);
+        buffer.putInt(0x45564157); // WAVE
+        buffer.putInt(0x20746d66); // "fmt "
+        buffer.putInt(16);
+        buffer.putShort((short)1); // PCM
+        buffer.putShort((short)1); // mono
+        buffer.putInt(sampleRate);
+        buffer.putInt(sampleRate * 2);
+        buffer.putShort((short)2);
+        buffer.putShort((short)16);
+        buffer.putInt(0x61746164); // "data"
+        buffer.putInt(data.length * 2);
+        for (short s : data) {
+            buffer.putShort(s);
+        }
+        out.write(buffer.array());
+    }
+}
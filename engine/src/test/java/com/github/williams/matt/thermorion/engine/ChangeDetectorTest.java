@@ -0,0 +1,82 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeDetectorTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    private static RadiometricFrame uniformFrame(int value) {
+        RadiometricFrame frame = new RadiometricFrame(WIDTH, HEIGHT);
+        Arrays.fill(frame.getPixels(), (short)value);
+        return frame;
+    }
+
+    /**
+     * Checks a frame and, like the engine, accepts it if it counts as changed.
+     */
+    private static boolean offer(ChangeDetector detector, RadiometricFrame frame) {
+        boolean changed = detector.hasChanged(frame);
+        if (changed) {
+            detector.accept();
+        }
+        return changed;
+    }
+
+    @Test
+    public void theFirstFrameAlwaysCountsAsChanged() {
+        ChangeDetector detector = new ChangeDetector();
+        detector.setTolerance(10);
+        assertTrue(offer(detector, uniformFrame(29000)));
+    }
+
+    @Test
+    public void anIdenticalFrameIsOnlySkippedWithATolerance() {
+        ChangeDetector detector = new ChangeDetector();
+        assertTrue(offer(detector, uniformFrame(29000)));
+        assertTrue(offer(detector, uniformFrame(29000)));
+        detector.setTolerance(10);
+        assertFalse(offer(detector, uniformFrame(29000)));
+    }
+
+    @Test
+    public void driftIsCaughtOnceItAddsUpPastTheTolerance() {
+        ChangeDetector detector = new ChangeDetector();
+        detector.setTolerance(10);
+        offer(detector, uniformFrame(29000));
+        // Each step is under the tolerance, but they are measured from the last accepted frame.
+        assertFalse(offer(detector, uniformFrame(29003)));
+        assertFalse(offer(detector, uniformFrame(29006)));
+        assertFalse(offer(detector, uniformFrame(29009)));
+        assertTrue(offer(detector, uniformFrame(29012)));
+        assertFalse(offer(detector, uniformFrame(29015)));
+    }
+
+    @Test
+    public void aChangeConfinedToOneBlockIsCaught() {
+        ChangeDetector detector = new ChangeDetector();
+        detector.setTolerance(10);
+        offer(detector, uniformFrame(29000));
+        RadiometricFrame frame = uniformFrame(29000);
+        for (int y = 32; y < 48; y++) {
+            Arrays.fill(frame.getPixels(), y * WIDTH + 64, y * WIDTH + 80, (short)29100);
+        }
+        assertTrue(offer(detector, frame));
+    }
+
+    @Test
+    public void aNewResolutionCountsAsChanged() {
+        ChangeDetector detector = new ChangeDetector();
+        detector.setTolerance(10);
+        offer(detector, uniformFrame(29000));
+        RadiometricFrame larger = new RadiometricFrame(WIDTH * 2, HEIGHT * 2);
+        Arrays.fill(larger.getPixels(), (short)29000);
+        assertTrue(offer(detector, larger));
+        assertFalse(offer(detector, larger));
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameMailboxTest {
+    @Test
+    public void aSlowConsumerOnlySeesTheNewestItem() throws InterruptedException {
+        FrameMailbox<Integer> mailbox = new FrameMailbox<Integer>();
+        mailbox.offer(1);
+        mailbox.offer(2);
+        mailbox.offer(3);
+        assertEquals(3, (int)mailbox.take());
+        mailbox.markProcessed();
+        assertEquals(3, mailbox.getReceivedCount());
+        assertEquals(2, mailbox.getDroppedCount());
+        assertEquals(1, mailbox.getProcessedCount());
+    }
+
+    @Test(timeout = 30000)
+    public void aSlowConsumerThreadSeesOnlyNewerItemsAndTheLastOne() throws InterruptedException {
+        final int items = 2000;
+        final FrameMailbox<Integer> mailbox = new FrameMailbox<Integer>();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    int previous = -1;
+                    while (previous < items - 1) {
+                        int item = mailbox.take();
+                        if (item <= previous) {
+                            failure.set(item + " after " + previous);
+                            return;
+                        }
+                        previous = item;
+                        mailbox.markProcessed();
+                        // Slower than the producer, so most items are superseded.
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    failure.set(e.toString());
+                }
+            }
+        };
+        consumer.start();
+        for (int i = 0; i < items; i++) {
+            mailbox.offer(i);
+            if ((i & 63) == 0) {
+                Thread.sleep(1);
+            }
+        }
+        consumer.join();
+        assertNull(failure.get());
+        assertEquals(items, mailbox.getReceivedCount());
+        assertEquals(items, mailbox.getDroppedCount() + mailbox.getProcessedCount());
+        assertTrue(mailbox.getDroppedCount() > 0);
+    }
+
+    @Test(timeout = 30000)
+    public void anItemOfferedWhileTheConsumerParksIsNotLost() throws InterruptedException {
+        // The producer offers each item as soon as the last was taken, so many arrive while the
+        // consumer is between finding the mailbox empty and parking.  A lost wakeup hangs.
+        final int items = 20000;
+        final FrameMailbox<Integer> mailbox = new FrameMailbox<Integer>();
+        final AtomicReference<Integer> taken = new AtomicReference<Integer>(-1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Integer item;
+                    while ((item = mailbox.take()) != null) {
+                        taken.set(item);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        consumer.start();
+        for (int i = 0; i < items; i++) {
+            mailbox.offer(i);
+            while (taken.get() != i) {
+                Thread.yield();
+            }
+        }
+        mailbox.close();
+        consumer.join();
+        assertEquals(0, mailbox.getDroppedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void closeWakesAParkedConsumer() throws InterruptedException {
+        final FrameMailbox<Integer> mailbox = new FrameMailbox<Integer>();
+        final AtomicReference<Object> result = new AtomicReference<Object>("not returned");
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result.set(mailbox.take());
+                } catch (InterruptedException e) {
+                    result.set(e);
+                }
+            }
+        };
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        mailbox.close();
+        consumer.join();
+        assertNull(result.get());
+    }
+}
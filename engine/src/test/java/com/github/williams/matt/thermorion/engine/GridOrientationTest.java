@@ -0,0 +1,105 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GridOrientationTest {
+    private static final GridGeometry PORTRAIT = new GridGeometry(1080, 1440);
+    private static final GridGeometry LANDSCAPE = new GridGeometry(1440, 1080);
+
+    @Test
+    public void everyRotationMapsEachPanelExactlyOnce() {
+        for (GridGeometry geometry : new GridGeometry[] {PORTRAIT, LANDSCAPE}) {
+            for (int rotation = 0; rotation < 4; rotation++) {
+                GridOrientation orientation = new GridOrientation(geometry, rotation);
+                assertEquals(rotation * 90, orientation.getRotation());
+                int[] panels = orientation.getPanels();
+                assertEquals(geometry.getNumPanels(), panels.length);
+                boolean[] seen = new boolean[panels.length];
+                for (int panel : panels) {
+                    assertFalse("rotation " + rotation + " repeats panel " + panel, seen[panel]);
+                    seen[panel] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void isLitReadsBackTheVoiceEachPanelPlays() {
+        for (GridGeometry geometry : new GridGeometry[] {PORTRAIT, LANDSCAPE}) {
+            int numPanelsWide = geometry.getNumPanelsWide();
+            for (int rotation = 0; rotation < 4; rotation++) {
+                GridOrientation orientation = new GridOrientation(geometry, rotation);
+                for (int timeslot = 0; timeslot < geometry.getNumTimeslots(); timeslot++) {
+                    for (int voice = 0; voice < geometry.getNumVoices(); voice++) {
+                        long[] timeslots = new long[geometry.getNumTimeslots()];
+                        timeslots[timeslot] = 1L << voice;
+                        int panel = orientation.getPanel(timeslot, voice);
+                        assertTrue(orientation.isLit(timeslots, panel % numPanelsWide, panel / numPanelsWide));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Held upright, a portrait grid sweeps down its rows with a voice per column.  Turned a
+     * quarter either way, the view's rows become the holder's columns, so the sweep runs across
+     * what the holder sees and the voices run down it: the two axes swap for the holder while
+     * the sweep stays on the view's longer side.
+     */
+    @Test
+    public void portraitQuarterTurnsSwapWhichWayTheHolderSeesTheAxes() {
+        int w = PORTRAIT.getNumPanelsWide();
+        int h = PORTRAIT.getNumPanelsHigh();
+        assertEquals(h, PORTRAIT.getNumTimeslots());
+        assertEquals(w, PORTRAIT.getNumVoices());
+        GridOrientation[] orientations = new GridOrientation[4];
+        for (int rotation = 0; rotation < 4; rotation++) {
+            orientations[rotation] = new GridOrientation(PORTRAIT, rotation);
+        }
+        for (int t = 0; t < h; t++) {
+            for (int v = 0; v < w; v++) {
+                assertEquals(v + t * w, orientations[0].getPanel(t, v));
+                assertEquals(v + (h - 1 - t) * w, orientations[1].getPanel(t, v));
+                assertEquals((w - 1 - v) + (h - 1 - t) * w, orientations[2].getPanel(t, v));
+                assertEquals((w - 1 - v) + t * w, orientations[3].getPanel(t, v));
+            }
+        }
+        assertFalse(orientations[0].isSweepAlongX());
+        assertFalse(orientations[0].isSweepReversed());
+        assertFalse(orientations[1].isSweepAlongX());
+        assertTrue(orientations[1].isSweepReversed());
+        assertTrue(orientations[2].isSweepReversed());
+        assertFalse(orientations[3].isSweepAlongX());
+        assertFalse(orientations[3].isSweepReversed());
+    }
+
+    @Test
+    public void landscapeQuarterTurnsSwapWhichWayTheHolderSeesTheAxes() {
+        int w = LANDSCAPE.getNumPanelsWide();
+        int h = LANDSCAPE.getNumPanelsHigh();
+        assertEquals(w, LANDSCAPE.getNumTimeslots());
+        assertEquals(h, LANDSCAPE.getNumVoices());
+        GridOrientation[] orientations = new GridOrientation[4];
+        for (int rotation = 0; rotation < 4; rotation++) {
+            orientations[rotation] = new GridOrientation(LANDSCAPE, rotation);
+        }
+        for (int t = 0; t < w; t++) {
+            for (int v = 0; v < h; v++) {
+                assertEquals(t + v * w, orientations[0].getPanel(t, v));
+                assertEquals(t + (h - 1 - v) * w, orientations[1].getPanel(t, v));
+                assertEquals((w - 1 - t) + (h - 1 - v) * w, orientations[2].getPanel(t, v));
+                assertEquals((w - 1 - t) + v * w, orientations[3].getPanel(t, v));
+            }
+        }
+        for (int rotation = 0; rotation < 4; rotation++) {
+            assertTrue(orientations[rotation].isSweepAlongX());
+        }
+        assertFalse(orientations[1].isSweepReversed());
+        assertTrue(orientations[3].isSweepReversed());
+    }
+}
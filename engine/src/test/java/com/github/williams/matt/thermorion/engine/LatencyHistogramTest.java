@@ -0,0 +1,67 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private static final long MAX_VALUE = (1L << 41) - 1;
+
+    @Test
+    public void valuesBelowSixteenHaveABucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.lowerBoundOf(value));
+            assertEquals(value + 1, LatencyHistogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsTileTheRangeToWithinASixteenth() {
+        int last = LatencyHistogram.bucketOf(MAX_VALUE);
+        for (int bucket = 0; bucket <= last; bucket++) {
+            long lower = LatencyHistogram.lowerBoundOf(bucket);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals("bucket " + bucket, bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals("bucket " + bucket, bucket, LatencyHistogram.bucketOf(upper - 1));
+            if (bucket < last) {
+                assertEquals(upper, LatencyHistogram.lowerBoundOf(bucket + 1));
+            }
+            assertTrue("bucket " + bucket + " is " + lower + ".." + upper, (upper - lower) * 16 <= Math.max(16, lower));
+        }
+        assertEquals(MAX_VALUE + 1, LatencyHistogram.upperBoundOf(last));
+    }
+
+    @Test
+    public void percentilesAreTheUpperEdgeOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMeanNanos());
+        long p50 = histogram.getPercentileNanos(0.5);
+        assertEquals(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(500000)), p50);
+        assertTrue(p50 > 500000 && p50 <= 500000 + 500000 / 16);
+        long p99 = histogram.getPercentileNanos(0.99);
+        assertTrue(p99 > 990000 && p99 <= 990000 + 990000 / 16);
+        // Never past the largest value actually recorded.
+        assertEquals(1000000, histogram.getPercentileNanos(1.0));
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(0, new LatencyHistogram().getPercentileNanos(0.5));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(1.0));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(MAX_VALUE, histogram.getMaxNanos());
+        assertEquals(MAX_VALUE, histogram.getPercentileNanos(1.0));
+        // The range the class doc promises: over 36 minutes.
+        assertTrue(MAX_VALUE > 36 * 60 * 1000000000L);
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NoteEventBusTest {
+    private static void assertStep(NoteEventQueue queue, int timeslot, long onsetNanos) {
+        assertTrue(queue.poll());
+        assertTrue(queue.isStep());
+        assertEquals(timeslot, queue.getTimeslot());
+        assertEquals(onsetNanos, queue.getOnsetNanos());
+    }
+
+    private static void assertNote(NoteEventQueue queue, int degree, long onsetNanos) {
+        assertTrue(queue.poll());
+        assertFalse(queue.isStep());
+        assertEquals(degree, queue.getVoice());
+        assertEquals(onsetNanos, queue.getOnsetNanos());
+    }
+
+    @Test
+    public void everySubscriberGetsEveryEventStampedWithItsStep() {
+        NoteEventBus bus = new NoteEventBus();
+        NoteEventQueue a = bus.subscribe(8);
+        NoteEventQueue b = bus.subscribe(8);
+        bus.onStep(2, 500);
+        bus.noteOn(4, 1.0f);
+        bus.noteOn(9, 1.5f);
+        for (NoteEventQueue queue : new NoteEventQueue[] {a, b}) {
+            assertStep(queue, 2, 500);
+            assertNote(queue, 4, 500);
+            assertNote(queue, 9, 500);
+            assertFalse(queue.poll());
+        }
+    }
+
+    @Test
+    public void subscribersOnlySeeEventsWhileSubscribed() {
+        NoteEventBus bus = new NoteEventBus();
+        NoteEventQueue early = bus.subscribe(8);
+        bus.onStep(0, 0);
+        NoteEventQueue late = bus.subscribe(8);
+        bus.onStep(1, 100);
+        bus.unsubscribe(early);
+        bus.onStep(2, 200);
+        assertEquals(1, bus.getSubscriberCount());
+        assertStep(early, 0, 0);
+        assertStep(early, 1, 100);
+        assertFalse(early.poll());
+        assertStep(late, 1, 100);
+        assertStep(late, 2, 200);
+        assertFalse(late.poll());
+    }
+
+    @Test
+    public void aSlowSubscriberOnlyLosesItsOwnEvents() {
+        NoteEventBus bus = new NoteEventBus();
+        NoteEventQueue slow = bus.subscribe(2);
+        NoteEventQueue fast = bus.subscribe(8);
+        bus.onStep(0, 0);
+        bus.noteOn(1, 1.0f);
+        bus.noteOn(2, 1.0f);
+        assertEquals(1, slow.getDroppedCount());
+        assertEquals(0, fast.getDroppedCount());
+        assertStep(fast, 0, 0);
+        assertNote(fast, 1, 0);
+        assertNote(fast, 2, 0);
+    }
+
+    @Test(timeout = 30000)
+    public void subscribersComingAndGoingDoNotDisturbTheOthers() throws InterruptedException {
+        final NoteEventBus bus = new NoteEventBus();
+        NoteEventQueue steady = bus.subscribe(1 << 16);
+        final AtomicBoolean publishing = new AtomicBoolean(true);
+        Thread churn = new Thread() {
+            @Override
+            public void run() {
+                while (publishing.get()) {
+                    bus.unsubscribe(bus.subscribe(4));
+                }
+            }
+        };
+        churn.start();
+        int steps = 20000;
+        for (int i = 0; i < steps; i++) {
+            bus.onStep(i, i);
+            bus.flush();
+        }
+        publishing.set(false);
+        churn.join();
+        assertEquals(1, bus.getSubscriberCount());
+        for (int i = 0; i < steps; i++) {
+            assertStep(steady, i, i);
+        }
+        assertFalse(steady.poll());
+    }
+}
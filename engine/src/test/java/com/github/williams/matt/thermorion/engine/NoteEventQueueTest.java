@@ -0,0 +1,174 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteEventQueueTest {
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        NoteEventQueue queue = new NoteEventQueue(5);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(queue.offer(i, 1.0f, i));
+        }
+        assertFalse(queue.offer(8, 1.0f, 8));
+        assertFalse(queue.offerStep(0, 8));
+        assertEquals(2, queue.getDroppedCount());
+
+        NoteEventQueue tiny = new NoteEventQueue(0);
+        assertTrue(tiny.offer(0, 1.0f, 0));
+        assertTrue(tiny.offer(1, 1.0f, 0));
+        assertFalse(tiny.offer(2, 1.0f, 0));
+    }
+
+    @Test
+    public void eventsComeOutInOrderAcrossTheWrap() {
+        NoteEventQueue queue = new NoteEventQueue(4);
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(next + i, 0.5f * i, 100L * (next + i)));
+            }
+            for (int i = 0; i < 3; i++, next++) {
+                assertTrue(queue.poll());
+                assertFalse(queue.isStep());
+                assertEquals(next, queue.getVoice());
+                assertEquals(0.5f * i, queue.getPitch(), 0);
+                assertEquals(100L * next, queue.getOnsetNanos());
+            }
+            assertFalse(queue.poll());
+        }
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void aFullQueueDropsNewEventsAndKeepsOldOnes() {
+        NoteEventQueue queue = new NoteEventQueue(2);
+        queue.offer(1, 1.0f, 0);
+        queue.offer(2, 1.0f, 0);
+        assertFalse(queue.offer(3, 1.0f, 0));
+        assertTrue(queue.poll());
+        assertEquals(1, queue.getVoice());
+        assertTrue(queue.offer(4, 1.0f, 0));
+        assertTrue(queue.poll());
+        assertEquals(2, queue.getVoice());
+        assertTrue(queue.poll());
+        assertEquals(4, queue.getVoice());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void stepMarkersCarryTheirTimeslot() {
+        NoteEventQueue queue = new NoteEventQueue(4);
+        queue.offerStep(0, 10);
+        queue.offerStep(31, 20);
+        queue.offer(0, 1.0f, 20);
+        assertTrue(queue.poll());
+        assertTrue(queue.isStep());
+        assertEquals(0, queue.getTimeslot());
+        assertTrue(queue.poll());
+        assertTrue(queue.isStep());
+        assertEquals(31, queue.getTimeslot());
+        assertEquals(20, queue.getOnsetNanos());
+        assertTrue(queue.poll());
+        // Degree 0 is a note, not the marker for timeslot -1.
+        assertFalse(queue.isStep());
+    }
+
+    @Test
+    public void dispatchHandsEachEventToTheRightCallback() {
+        NoteEventQueue queue = new NoteEventQueue(4);
+        queue.offerStep(3, 50);
+        queue.offer(7, 1.5f, 50);
+        final StringBuilder calls = new StringBuilder();
+        NoteSink sink = new NoteSink() {
+            @Override
+            public void onStep(int timeslot, long onsetNanos) {
+                calls.append("step ").append(timeslot).append('@').append(onsetNanos).append(';');
+            }
+
+            @Override
+            public void noteOn(int degree, float pitch) {
+                calls.append("note ").append(degree).append('@').append(pitch).append(';');
+            }
+        };
+        while (queue.poll()) {
+            queue.dispatch(sink);
+        }
+        assertEquals("step 3@50;note 7@1.5;", calls.toString());
+    }
+
+    @Test
+    public void awaitReturnsAtOnceIfEventsAreQueued() {
+        NoteEventQueue queue = new NoteEventQueue(4);
+        queue.offer(1, 1.0f, 0);
+        queue.await();
+        assertTrue(queue.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void wakeHandsEventsToAWaitingConsumer() throws InterruptedException {
+        final NoteEventQueue queue = new NoteEventQueue(4);
+        final AtomicReference<Integer> received = new AtomicReference<Integer>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                while (!queue.poll()) {
+                    queue.await();
+                }
+                received.set(queue.getVoice());
+            }
+        };
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        assertNull(received.get());
+        queue.offer(42, 1.0f, 0);
+        queue.wake();
+        consumer.join();
+        assertEquals(42, (int)received.get());
+    }
+
+    @Test(timeout = 30000)
+    public void aConsumerThreadSeesEveryEventInOrder() throws InterruptedException {
+        final int events = 200000;
+        final NoteEventQueue queue = new NoteEventQueue(64);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                for (int expected = 0; expected < events; ) {
+                    if (!queue.poll()) {
+                        queue.await();
+                        continue;
+                    }
+                    if ((queue.getVoice() != expected) || (queue.getOnsetNanos() != expected)) {
+                        failure.set("expected " + expected + " got " + queue.getVoice() + "@" + queue.getOnsetNanos());
+                        return;
+                    }
+                    expected++;
+                }
+            }
+        };
+        consumer.start();
+        for (int i = 0; i < events; i++) {
+            // This test wants every event, so wait for room rather than dropping.
+            while (!queue.offer(i, 1.0f, i)) {
+                queue.wake();
+                Thread.yield();
+            }
+            if ((i & 15) == 15) {
+                queue.wake();
+            }
+        }
+        queue.wake();
+        consumer.join();
+        assertNull(failure.get());
+    }
+}
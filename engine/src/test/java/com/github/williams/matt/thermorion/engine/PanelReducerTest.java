@@ -0,0 +1,102 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PanelReducerTest {
+    private static final int SENSOR_WIDTH = 160;
+    private static final int SENSOR_HEIGHT = 120;
+
+    private static RadiometricFrame uniformFrame(int width, int height, short value) {
+        RadiometricFrame frame = new RadiometricFrame(width, height);
+        Arrays.fill(frame.getPixels(), value);
+        return frame;
+    }
+
+    @Test
+    public void uniformFrameGivesEveryPanelTheSameMean() {
+        GridGeometry geometry = new GridGeometry(640, 480);
+        PanelReducer reducer = new PanelReducer(geometry, SENSOR_WIDTH, SENSOR_HEIGHT);
+        reducer.reduce(uniformFrame(SENSOR_WIDTH, SENSOR_HEIGHT, (short)29315));
+        for (short value : reducer.getPanelValues()) {
+            assertEquals(29315, value);
+        }
+        assertEquals(29315, reducer.getAverage());
+        assertEquals(29315, reducer.getPixelMinimum());
+        assertEquals(29315, reducer.getPixelMaximum());
+    }
+
+    @Test
+    public void hotPanelIsTheOnlyOneThatWarms() {
+        GridGeometry geometry = new GridGeometry(640, 480);
+        int x = 3;
+        int y = 2;
+        float scale = SENSOR_WIDTH * 1.0f / geometry.getWidth();
+        RadiometricFrame frame = uniformFrame(SENSOR_WIDTH, SENSOR_HEIGHT, (short)29000);
+        int left = (int)(geometry.getPanelLeft(x) * scale);
+        int top = (int)(geometry.getPanelTop(y) * scale);
+        int size = (int)(geometry.getPanelSize() * scale);
+        for (int row = top; row < top + size; row++) {
+            Arrays.fill(frame.getPixels(), row * SENSOR_WIDTH + left, row * SENSOR_WIDTH + left + size, (short)30000);
+        }
+        PanelReducer reducer = new PanelReducer(geometry, SENSOR_WIDTH, SENSOR_HEIGHT);
+        reducer.reduce(frame);
+        short[] values = reducer.getPanelValues();
+        int numPanelsWide = geometry.getNumPanelsWide();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("panel " + i, (i == x + y * numPanelsWide) ? 30000 : 29000, values[i]);
+        }
+        assertEquals(30000, reducer.getMaximum());
+        assertEquals(29000, reducer.getMinimum());
+    }
+
+    @Test
+    public void parallelPathMatchesSerialPath() {
+        GridGeometry geometry = new GridGeometry(1080, 1440, 16);
+        RadiometricFrame frame = new RadiometricFrame(640, 480);
+        short[] pixels = frame.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (short)(29000 + (i * 7919) % 2000);
+        }
+        PanelReducer serial = new PanelReducer(geometry, 640, 480);
+        serial.reduce(frame);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            PanelReducer parallel = new PanelReducer(geometry, 640, 480, pool);
+            parallel.reduce(frame);
+            assertArrayEquals(serial.getPanelValues(), parallel.getPanelValues());
+            assertEquals(serial.getPixelMinimum(), parallel.getPixelMinimum());
+            assertEquals(serial.getPixelMaximum(), parallel.getPixelMaximum());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void denseGridOnSmallViewStaysOnTheSensor() {
+        // Panels here are narrower than twice the inset, so the last ones start at the sensor edge.
+        GridGeometry geometry = new GridGeometry(300, 200, GridGeometry.MAX_DIVISIONS);
+        int[][] sensors = {{160, 120}, {640, 480}, {321, 241}};
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int[] sensor : sensors) {
+                RadiometricFrame frame = uniformFrame(sensor[0], sensor[1], (short)29500);
+                PanelReducer serial = new PanelReducer(geometry, sensor[0], sensor[1]);
+                serial.reduce(frame);
+                PanelReducer parallel = new PanelReducer(geometry, sensor[0], sensor[1], pool);
+                parallel.reduce(frame);
+                for (short value : serial.getPanelValues()) {
+                    assertEquals(29500, value);
+                }
+                assertArrayEquals(serial.getPanelValues(), parallel.getPanelValues());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SequencerTest {
+    private static final long START = 1000000000L;
+
+    private final GridGeometry geometry = new GridGeometry(1080, 1440);
+    private final ToneGrid grid = new ToneGrid(geometry);
+    private final Sequencer sequencer = new Sequencer();
+    private final RecordingSink sink = new RecordingSink();
+
+    private static final class RecordingSink implements NoteSink {
+        final List<Integer> steps = new ArrayList<Integer>();
+        final List<Integer> degrees = new ArrayList<Integer>();
+
+        @Override
+        public void onStep(int timeslot, long onsetNanos) {
+            steps.add(timeslot);
+        }
+
+        @Override
+        public void noteOn(int degree, float pitch) {
+            degrees.add(degree);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        sequencer.reset(grid, START);
+    }
+
+    private void light(int x, int y) {
+        boolean[] tones = new boolean[geometry.getNumPanels()];
+        tones[x + y * geometry.getNumPanelsWide()] = true;
+        grid.publish(tones, 1);
+    }
+
+    @Test
+    public void darkGridIdles() {
+        assertEquals(Sequencer.IDLE, sequencer.advance(START, sink));
+        assertTrue(sequencer.isIdle());
+        assertTrue(sink.steps.isEmpty());
+    }
+
+    @Test
+    public void stepsAreDueOnTheStepGrid() {
+        light(0, 1);
+        // Coming out of idle part-way through step 0, the sequencer waits for step 1.
+        assertEquals(START + Sequencer.STEP_NANOS, sequencer.advance(START + 1000, sink));
+        assertTrue(sink.steps.isEmpty());
+        assertEquals(START + 2 * Sequencer.STEP_NANOS, sequencer.advance(START + Sequencer.STEP_NANOS + 5000, sink));
+        assertEquals(1, sink.steps.size());
+        assertEquals(1, (int)sink.steps.get(0));
+        assertEquals(1, sink.degrees.size());
+        int lowest = Scale.getLowestDegree(geometry.getNumVoices());
+        assertEquals(Scale.getDegree(lowest, 0), (int)sink.degrees.get(0));
+        assertTrue(sequencer.isAnimating(1, 0));
+    }
+
+    @Test
+    public void lateStepsAreSkippedNotPlayedLate() {
+        light(0, 0);
+        sequencer.advance(START, sink);
+        sequencer.advance(START + 5 * Sequencer.STEP_NANOS, sink);
+        assertEquals(1, sink.steps.size());
+        assertEquals(5, (int)sink.steps.get(0));
+    }
+
+    @Test
+    public void playheadWrapsEverySweep() {
+        long sweepNanos = Sequencer.STEP_NANOS * geometry.getNumTimeslots();
+        assertEquals(Sequencer.STEP_MILLIS, sequencer.getPlayheadMillis(START + sweepNanos + Sequencer.STEP_NANOS));
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionReaderTest {
+    private static final int FRAMES = 5;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final GridGeometry geometry = new GridGeometry(1080, 1440);
+    private final SyntheticFrameSource source = new SyntheticFrameSource(160, 120, 9, 4, 42);
+
+    private File record() throws IOException {
+        File dataFile = folder.newFile("session.thr");
+        // Room for every frame, so none are dropped.
+        SessionRecorder recorder = new SessionRecorder(dataFile, FRAMES);
+        for (int n = 0; n < FRAMES; n++) {
+            recorder.record(source.render(n, 1000L * n), n, geometry);
+        }
+        recorder.close();
+        assertEquals(FRAMES, recorder.getWrittenCount());
+        return dataFile;
+    }
+
+    private static void padWithZeros(File file, int bytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() + bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void assertFramesReadBack(File dataFile) throws IOException {
+        SessionReader reader = new SessionReader(dataFile);
+        try {
+            assertEquals(FRAMES, reader.getFrameCount());
+            RadiometricFrame frame = new RadiometricFrame(1, 1);
+            for (int n = 0; n < FRAMES; n++) {
+                reader.read(n, frame);
+                assertEquals(1000L * n, frame.getTimestampNanos());
+                assertEquals(n, reader.getTuningState());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void closedSessionReadsBackEveryFrame() throws IOException {
+        assertFramesReadBack(record());
+    }
+
+    @Test
+    public void killedSessionEndsBeforeItsZeroFilledTail() throws IOException {
+        // As a recorder that never got to close() leaves them: mapped ahead and untrimmed.
+        File dataFile = record();
+        padWithZeros(dataFile, 64 * 1024);
+        padWithZeros(SessionRecorder.getIndexFile(dataFile), 64 * 1024);
+        assertFramesReadBack(dataFile);
+    }
+}
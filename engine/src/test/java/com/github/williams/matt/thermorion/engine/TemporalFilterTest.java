@@ -0,0 +1,72 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TemporalFilterTest {
+    @Test
+    public void theDefaultWeightPassesFramesStraightThrough() {
+        TemporalFilter filter = new TemporalFilter();
+        assertEquals(0, filter.getSettleFrames());
+        filter.apply(new short[] {29000, 29500});
+        assertArrayEquals(new short[] {30000, 28000}, filter.apply(new short[] {30000, 28000}));
+    }
+
+    @Test
+    public void averagesSettleWithinTheirSettleFrames() {
+        TemporalFilter filter = new TemporalFilter();
+        filter.setWeight(0.25f);
+        // The first frame primes the averages rather than being blended with zeros.
+        assertArrayEquals(new short[] {29000}, filter.apply(new short[] {29000}));
+        int settleFrames = filter.getSettleFrames();
+        short value = 0;
+        for (int n = 0; n < settleFrames; n++) {
+            value = filter.apply(new short[] {30000})[0];
+            assertTrue("frame " + n + ": " + value, value <= 30000);
+        }
+        assertTrue("settled at " + value, 30000 - value <= 10);
+        assertEquals(value, filter.getAverage());
+    }
+
+    @Test
+    public void resetPrimesAgainFromTheNextFrame() {
+        TemporalFilter filter = new TemporalFilter();
+        filter.setWeight(0.1f);
+        filter.apply(new short[] {29000});
+        filter.reset();
+        assertArrayEquals(new short[] {31000}, filter.apply(new short[] {31000}));
+    }
+
+    @Test
+    public void smoothedNoiseNoLongerTogglesAPanelNearTheThreshold() {
+        // Noise of +-40 around mean + 35 crosses both the on (+50) and off (+20) thresholds on
+        // its own, but once smoothed it stays between them and the panel keeps its state.
+        GridGeometry geometry = new GridGeometry(1080, 1440);
+        int numPanels = geometry.getNumPanels();
+        short mean = 29000;
+        ToneThresholder thresholder = new ToneThresholder();
+        thresholder.setOffset(50);
+        thresholder.setOffOffset(20);
+        TemporalFilter filter = new TemporalFilter();
+        filter.setWeight(0.25f);
+        short[] values = new short[numPanels];
+        boolean[] previousTones = new boolean[numPanels];
+        boolean[] tones = new boolean[numPanels];
+        int toggles = 0;
+        for (int n = 0; n < 200; n++) {
+            Arrays.fill(values, mean);
+            values[0] = (short)(mean + 35 + (((n & 1) == 0) ? 40 : -40));
+            thresholder.threshold(geometry, filter.apply(values), mean, previousTones, tones);
+            if ((n > 0) && (tones[0] != previousTones[0])) {
+                toggles++;
+            }
+            System.arraycopy(tones, 0, previousTones, 0, numPanels);
+        }
+        assertEquals(0, toggles);
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ThermalEngineTest {
+    private static final int WARM_UP_FRAMES = 500;
+    private static final int ROUND_FRAMES = 1000;
+    private static final int MAX_ROUNDS = 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    /**
+     * @return the JVM's per-thread allocation counters, or null if it doesn't keep them
+     */
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return threads;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Once the grid and sensor resolution are settled, the per-frame path - change detection,
+     * reduction, filtering, thresholding, publishing and colorizing - allocates nothing.
+     *
+     * The JIT allocates a little on the calling thread now and then as it recompiles, so this
+     * looks for one whole round of frames that allocates nothing.  A real per-frame allocation
+     * shows up in every round.
+     */
+    @Test
+    public void steadyStateFramesAllocateNothing() {
+        assumeTrue(THREADS != null);
+        ThermalEngine engine = new ThermalEngine();
+        assertSteadyStateAllocatesNothing(engine, new SyntheticFrameSource(160, 120, 9, 4, 42));
+    }
+
+    @Test
+    public void steadyStateParallelFramesAllocateNothing() {
+        assumeTrue(THREADS != null);
+        ThermalEngine engine = new ThermalEngine(2);
+        try {
+            // Big enough to be reduced in stripes on the workers.
+            assertSteadyStateAllocatesNothing(engine, new SyntheticFrameSource(640, 480, 9, 4, 42));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static void assertSteadyStateAllocatesNothing(ThermalEngine engine, SyntheticFrameSource source) {
+        engine.setBounds(1080, 1440, 16, 0);
+        engine.setColorizer(new Colorizer(Palette.IRON));
+        long n = 0;
+        for (; n < WARM_UP_FRAMES; n++) {
+            engine.processFrame(source.render(n, n));
+        }
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; (round < MAX_ROUNDS) && (fewest > 0); round++) {
+            // Rendering reuses the source's frame, so can be counted in with the engine.
+            long before = allocatedBytes();
+            for (long end = n + ROUND_FRAMES; n < end; n++) {
+                engine.processFrame(source.render(n, n));
+            }
+            fewest = Math.min(fewest, allocatedBytes() - before);
+        }
+        assertEquals("fewest bytes allocated in " + ROUND_FRAMES + " frames", 0, fewest);
+    }
+
+    private static ThermalEngine skippingEngine() {
+        ThermalEngine engine = new ThermalEngine();
+        engine.setBounds(1080, 1440, 0);
+        engine.getChangeDetector().setTolerance(20);
+        return engine;
+    }
+
+    @Test
+    public void identicalFramesAreNeverSkippedByDefault() {
+        ThermalEngine engine = new ThermalEngine();
+        engine.setBounds(1080, 1440, 0);
+        RadiometricFrame frame = new SyntheticFrameSource(160, 120, 9, 4, 42).render(0, 0);
+        for (int n = 0; n < 3; n++) {
+            assertTrue(engine.processFrame(frame));
+        }
+        assertEquals(0, engine.getStats().getSkippedCount());
+    }
+
+    @Test
+    public void identicalFramesAreSkippedWithATolerance() {
+        ThermalEngine engine = skippingEngine();
+        RadiometricFrame frame = new SyntheticFrameSource(160, 120, 9, 4, 42).render(0, 0);
+        assertTrue(engine.processFrame(frame));
+        assertFalse(engine.processFrame(frame));
+        assertEquals(1, engine.getStats().getSkippedCount());
+    }
+
+    @Test
+    public void framesAreProcessedUntilTheTemporalFilterSettles() {
+        ThermalEngine engine = skippingEngine();
+        engine.getTemporalFilter().setWeight(0.5f);
+        RadiometricFrame frame = new SyntheticFrameSource(160, 120, 9, 4, 42).render(0, 0);
+        assertTrue(engine.processFrame(frame));
+        for (int n = 0; n < engine.getTemporalFilter().getSettleFrames(); n++) {
+            assertTrue("frame " + n, engine.processFrame(frame));
+        }
+        assertFalse(engine.processFrame(frame));
+    }
+
+    @Test
+    public void aPaletteChangeForcesTheNextFrame() {
+        ThermalEngine engine = skippingEngine();
+        Colorizer colorizer = new Colorizer(Palette.IRON);
+        engine.setColorizer(colorizer);
+        RadiometricFrame frame = new SyntheticFrameSource(160, 120, 9, 4, 42).render(0, 0);
+        engine.processFrame(frame);
+        assertFalse(engine.processFrame(frame));
+        colorizer.setPalette(Palette.IRON.next());
+        assertTrue(engine.processFrame(frame));
+        assertFalse(engine.processFrame(frame));
+    }
+
+    @Test
+    public void aPendingRotationForcesTheNextFrame() {
+        ThermalEngine engine = skippingEngine();
+        RadiometricFrame frame = new SyntheticFrameSource(160, 120, 9, 4, 42).render(0, 0);
+        engine.processFrame(frame);
+        assertFalse(engine.processFrame(frame));
+        engine.setRotation(90);
+        assertTrue(engine.processFrame(frame));
+        assertFalse(engine.getToneGrid().isRotationPending());
+        assertFalse(engine.processFrame(frame));
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ToneGridTest {
+    private final GridGeometry geometry = new GridGeometry(1080, 1440);
+    private final ToneGrid grid = new ToneGrid(geometry);
+
+    private boolean[] tones(int... lit) {
+        boolean[] tones = new boolean[geometry.getNumPanels()];
+        for (int panel : lit) {
+            tones[panel] = true;
+        }
+        return tones;
+    }
+
+    @Test
+    public void publishedTonesReadBackPanelByPanel() {
+        int numPanelsWide = geometry.getNumPanelsWide();
+        assertTrue(grid.publish(tones(0, 5 + 2 * numPanelsWide), 2));
+        for (int y = 0; y < geometry.getNumPanelsHigh(); y++) {
+            for (int x = 0; x < numPanelsWide; x++) {
+                assertEquals(((x == 0) && (y == 0)) || ((x == 5) && (y == 2)), grid.isLit(x, y));
+            }
+        }
+        assertEquals(2, grid.getLitCount());
+    }
+
+    @Test
+    public void portraitTimeslotsAreRowsWithOneBitPerColumn() {
+        // Portrait: the playhead steps down the rows and each column is a voice.
+        int numPanelsWide = geometry.getNumPanelsWide();
+        grid.publish(tones(3 + 4 * numPanelsWide), 1);
+        long[] timeslots = grid.getTimeslots();
+        assertEquals(geometry.getNumTimeslots(), timeslots.length);
+        assertEquals(1L << 3, timeslots[4]);
+    }
+
+    @Test
+    public void unchangedTonesPublishNothing() {
+        grid.publish(tones(7), 1);
+        int generation = grid.getGeneration();
+        assertFalse(grid.publish(tones(7), 1));
+        assertEquals(generation, grid.getGeneration());
+    }
+
+    @Test
+    public void changesListOnlyTheToggledPanels() {
+        grid.publish(tones(1, 2), 2);
+        int generation = grid.getGeneration();
+        grid.publish(tones(2, 9), 2);
+        int[] changes = new int[geometry.getNumPanels()];
+        int count = grid.copyChanges(generation, changes);
+        assertEquals(2, count);
+        assertEquals(1 + 9, changes[0] + changes[1]);
+        assertEquals(-1, grid.copyChanges(generation - 1, changes));
+    }
+
+    @Test
+    public void rotationSendsReadersBackToAFullReRead() {
+        grid.publish(tones(1), 1);
+        int generation = grid.getGeneration();
+        grid.setRotation(180);
+        assertTrue(grid.isRotationPending());
+        assertTrue(grid.publish(tones(1), 1));
+        assertFalse(grid.isRotationPending());
+        assertEquals(-1, grid.copyChanges(generation, new int[geometry.getNumPanels()]));
+        assertTrue(grid.isLit(1, 0));
+        assertEquals(180, grid.getOrientation().getRotation());
+    }
+}
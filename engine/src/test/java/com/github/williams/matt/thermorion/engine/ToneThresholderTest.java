@@ -0,0 +1,65 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ToneThresholderTest {
+    private static final short MEAN = 29000;
+    private static final int PANEL = 10;
+
+    private final GridGeometry geometry = new GridGeometry(1080, 1440);
+    private final ToneThresholder thresholder = new ToneThresholder();
+    private final short[] values = new short[geometry.getNumPanels()];
+    private final boolean[] previousTones = new boolean[geometry.getNumPanels()];
+    private final boolean[] tones = new boolean[geometry.getNumPanels()];
+
+    @Before
+    public void setUp() {
+        thresholder.setOffset(50);
+        thresholder.setOffOffset(20);
+        Arrays.fill(values, MEAN);
+    }
+
+    private boolean thresholdWith(int panelValue, boolean wasLit) {
+        values[PANEL] = (short)panelValue;
+        previousTones[PANEL] = wasLit;
+        thresholder.threshold(geometry, values, MEAN, previousTones, tones);
+        return tones[PANEL];
+    }
+
+    @Test
+    public void aPanelBetweenTheOffAndOnThresholdsKeepsItsState() {
+        assertTrue(thresholdWith(MEAN + 35, true));
+        assertFalse(thresholdWith(MEAN + 35, false));
+    }
+
+    @Test
+    public void aPanelOutsideTheBandFollowsItsValue() {
+        assertTrue(thresholdWith(MEAN + 51, false));
+        assertFalse(thresholdWith(MEAN + 19, true));
+    }
+
+    @Test
+    public void withoutPreviousTonesOnlyTheOnThresholdCounts() {
+        values[PANEL] = MEAN + 35;
+        assertEquals(0, thresholder.threshold(geometry, values, MEAN, tones));
+    }
+
+    @Test
+    public void neighboursAboveTheLowThresholdGrowFromALitPanel() {
+        thresholder.setLowOffset(10);
+        int numPanelsWide = geometry.getNumPanelsWide();
+        values[PANEL] = MEAN + 60;
+        values[PANEL + 1] = MEAN + 15;
+        values[PANEL + numPanelsWide] = MEAN + 5;
+        assertEquals(2, thresholder.threshold(geometry, values, MEAN, tones));
+        assertTrue(tones[PANEL + 1]);
+        assertFalse(tones[PANEL + numPanelsWide]);
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.williams.matt.thermorion.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VoiceAllocatorTest {
+    private static final long END = 1000;
+
+    @Test
+    public void freeSlotsAreTakenLowestFirst() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.NEWEST);
+        assertEquals(0, allocator.allocate(0, END, 0, 1.0f));
+        assertEquals(1, allocator.allocate(0, END, 1, 1.0f));
+        assertEquals(2, allocator.allocate(0, END, 2, 1.0f));
+        assertEquals(3, allocator.getActiveCount());
+        assertEquals(0, allocator.getStolenCount());
+    }
+
+    @Test
+    public void endedNotesFreeTheirSlots() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.NEWEST);
+        allocator.allocate(0, 100, 0, 1.0f);
+        allocator.allocate(0, END, 1, 1.0f);
+        assertEquals(0, allocator.allocate(100, END, 2, 1.0f));
+        assertEquals(0, allocator.getStolenCount());
+        assertEquals(2, allocator.getActiveCount());
+        assertEquals(3, allocator.getAllocatedCount());
+    }
+
+    @Test
+    public void newestStealsTheEarliestStart() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.NEWEST);
+        allocator.allocate(20, END, 0, 1.0f);
+        allocator.allocate(0, END, 1, 1.0f);
+        allocator.allocate(10, END, 2, 1.0f);
+        assertEquals(1, allocator.allocate(30, END, 3, 0.1f));
+        assertEquals(1, allocator.getStolenCount());
+        assertEquals(3, allocator.getActiveCount());
+    }
+
+    @Test
+    public void newestBreaksTiesWithTheLowestSlot() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.NEWEST);
+        for (int i = 0; i < 3; i++) {
+            allocator.allocate(0, END, i, 1.0f);
+        }
+        assertEquals(0, allocator.allocate(0, END, 3, 1.0f));
+    }
+
+    @Test
+    public void loudestStealsTheQuietestNote() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.LOUDEST);
+        allocator.allocate(0, END, 0, 1.0f);
+        allocator.allocate(0, END, 1, 0.2f);
+        allocator.allocate(0, END, 2, 0.6f);
+        assertEquals(1, allocator.allocate(0, END, 3, 0.5f));
+        assertEquals(1, allocator.getStolenCount());
+    }
+
+    @Test
+    public void loudestCountsHowFarEachNoteHasFaded() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.LOUDEST);
+        // At 90, slot 0 has faded to 0.1 but slot 1 is still at about 0.45.
+        allocator.allocate(0, 100, 0, 1.0f);
+        allocator.allocate(0, END, 1, 0.5f);
+        assertEquals(0, allocator.allocate(90, END, 2, 0.3f));
+    }
+
+    @Test
+    public void loudestBreaksTiesWithTheEarliestStart() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.LOUDEST);
+        // Both are at exactly 0.25 at 1000, but slot 1 started first.
+        allocator.allocate(1000, 2000, 0, 0.25f);
+        allocator.allocate(0, 2000, 1, 0.5f);
+        assertEquals(1, allocator.allocate(1000, 2000, 2, 1.0f));
+    }
+
+    @Test
+    public void loudestRejectsANoteQuieterThanEverySoundingOne() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.LOUDEST);
+        allocator.allocate(0, END, 0, 0.8f);
+        allocator.allocate(0, END, 1, 0.8f);
+        assertEquals(-1, allocator.allocate(0, END, 2, 0.5f));
+        assertEquals(1, allocator.getRejectedCount());
+        assertEquals(0, allocator.getStolenCount());
+        assertEquals(2, allocator.getActiveCount());
+        assertEquals(2, allocator.getAllocatedCount());
+    }
+
+    @Test
+    public void lowestPitchStealsTheHighestNote() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.LOWEST_PITCH);
+        allocator.allocate(0, END, 5, 1.0f);
+        allocator.allocate(0, END, 12, 1.0f);
+        allocator.allocate(0, END, 7, 1.0f);
+        assertEquals(1, allocator.allocate(0, END, 3, 1.0f));
+        assertEquals(1, allocator.getStolenCount());
+    }
+
+    @Test
+    public void lowestPitchBreaksTiesWithTheEarliestStartThenTheLowestSlot() {
+        VoiceAllocator allocator = new VoiceAllocator(3, VoiceAllocator.Policy.LOWEST_PITCH);
+        allocator.allocate(10, END, 9, 1.0f);
+        allocator.allocate(0, END, 9, 1.0f);
+        allocator.allocate(0, END, 9, 1.0f);
+        // An equal note may steal, from slot 1: it ties slot 2 on start and is the lower slot.
+        assertEquals(1, allocator.allocate(20, END, 9, 1.0f));
+    }
+
+    @Test
+    public void lowestPitchRejectsANoteHigherThanEverySoundingOne() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.LOWEST_PITCH);
+        allocator.allocate(0, END, 5, 1.0f);
+        allocator.allocate(0, END, 7, 1.0f);
+        assertEquals(-1, allocator.allocate(0, END, 8, 1.0f));
+        assertEquals(1, allocator.getRejectedCount());
+    }
+
+    @Test
+    public void resetFreesEverySlot() {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceAllocator.Policy.NEWEST);
+        allocator.allocate(0, END, 0, 1.0f);
+        allocator.allocate(0, END, 1, 1.0f);
+        allocator.reset();
+        assertEquals(0, allocator.getActiveCount());
+        assertEquals(0, allocator.allocate(0, END, 2, 1.0f));
+        assertEquals(0, allocator.getStolenCount());
+        assertEquals(2, allocator.getPeakActiveCount());
+    }
+
+    @Test
+    public void policiesParseIgnoringCase() {
+        assertEquals(VoiceAllocator.Policy.LOWEST_PITCH, VoiceAllocator.Policy.parse("lowest_pitch"));
+        assertEquals(VoiceAllocator.Policy.NEWEST, VoiceAllocator.Policy.parse("nonsense"));
+    }
+}